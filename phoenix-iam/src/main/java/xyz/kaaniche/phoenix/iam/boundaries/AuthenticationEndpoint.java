@@ -1,7 +1,9 @@
 package xyz.kaaniche.phoenix.iam.boundaries;
 
+import jakarta.ejb.EJB;
 import jakarta.enterprise.context.RequestScoped;
 import jakarta.inject.Inject;
+import jakarta.servlet.http.HttpServletRequest;
 
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.CookieParam;
@@ -20,19 +22,24 @@ import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.StreamingOutput;
 import jakarta.ws.rs.core.UriBuilder;
 import jakarta.ws.rs.core.UriInfo;
+import xyz.kaaniche.phoenix.iam.controllers.CredentialView;
+import xyz.kaaniche.phoenix.iam.controllers.GrantView;
 import xyz.kaaniche.phoenix.iam.controllers.PhoenixIAMRepository;
-import xyz.kaaniche.phoenix.iam.entities.Grant;
-import xyz.kaaniche.phoenix.iam.entities.Identity;
-import xyz.kaaniche.phoenix.iam.entities.Tenant;
-import xyz.kaaniche.phoenix.iam.security.Argon2Utility;
+import xyz.kaaniche.phoenix.iam.controllers.RolesView;
+import xyz.kaaniche.phoenix.iam.controllers.TenantRegistry;
+import xyz.kaaniche.phoenix.iam.controllers.TenantView;
 import xyz.kaaniche.phoenix.iam.security.AuthorizationCode;
+import xyz.kaaniche.phoenix.iam.security.AuthorizationCodeKeys;
+import xyz.kaaniche.phoenix.iam.security.ClientAddress;
+import xyz.kaaniche.phoenix.iam.security.EpochClock;
+import xyz.kaaniche.phoenix.iam.security.LoginThrottle;
+import xyz.kaaniche.phoenix.iam.security.PasswordHashingPool;
+import xyz.kaaniche.phoenix.iam.security.PasswordHashingSaturatedException;
 
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.time.Instant;
-import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -40,6 +47,10 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
 
@@ -47,12 +58,34 @@ import java.util.logging.Logger;
 @RequestScoped
 public class AuthenticationEndpoint {
     public static final String CHALLENGE_RESPONSE_COOKIE_ID = "signInId";
+    private static final long AUTHORIZATION_CODE_LIFETIME = 120L;
     @Inject
     private Logger logger;
 
     @Inject
     PhoenixIAMRepository phoenixIAMRepository;
 
+    @Inject
+    TenantRegistry tenantRegistry;
+
+    @Inject
+    private EpochClock clock;
+
+    @Inject
+    private PasswordHashingPool passwordHashingPool;
+
+    @Inject
+    private LoginThrottle loginThrottle;
+
+    @Inject
+    private ClientAddress clientAddress;
+
+    @Inject
+    private EndpointExecutor endpointExecutor;
+
+    @EJB
+    private AuthorizationCodeKeys authorizationCodeKeys;
+
     @GET
     @Produces(MediaType.TEXT_HTML)
     @Path("/authorize")
@@ -63,22 +96,23 @@ public class AuthenticationEndpoint {
         if (clientId == null || clientId.isEmpty()) {
             return informUserAboutError("Invalid client_id :" + clientId);
         }
-        Tenant tenant = phoenixIAMRepository.findTenantByName(clientId);
+        TenantView tenant = tenantRegistry.findByName(clientId).orElse(null);
         if (tenant == null) {
             return informUserAboutError("Invalid client_id :" + clientId);
         }
         //2. Client Authorized Grant Type
-        if (tenant.getSupportedGrantTypes() != null && !tenant.getSupportedGrantTypes().contains("authorization_code")) {
+        if (!tenant.supportsGrantType("authorization_code")) {
             return informUserAboutError("Authorization Grant type, authorization_code, is not allowed for this tenant :" + clientId);
         }
         //3. redirectUri
         String redirectUri = params.getFirst("redirect_uri");
-        if (tenant.getRedirectUri() != null && !tenant.getRedirectUri().isEmpty()) {
-            if (redirectUri != null && !redirectUri.isEmpty() && !tenant.getRedirectUri().equals(redirectUri)) {
+        if (tenant.redirectUri() != null) {
+            String registered = tenant.redirectUri().toString();
+            if (redirectUri != null && !redirectUri.isEmpty() && !registered.equals(redirectUri)) {
                 //should be in the client.redirectUri
                 return informUserAboutError("redirect_uri is pre-registered and should match");
             }
-            redirectUri = tenant.getRedirectUri();
+            redirectUri = registered;
         } else {
             if (redirectUri == null || redirectUri.isEmpty()) {
                 return informUserAboutError("redirect_uri is not pre-registered and should be provided");
@@ -95,7 +129,7 @@ public class AuthenticationEndpoint {
         //5. check scope
         String requestedScope = params.getFirst("scope");
         if (requestedScope == null || requestedScope.isEmpty()) {
-            requestedScope = tenant.getRequiredScopes();
+            requestedScope = tenant.defaultScope();
         }
         //6. code_challenge_method must be S256
         String codeChallengeMethod = params.getFirst("code_challenge_method");
@@ -107,7 +141,7 @@ public class AuthenticationEndpoint {
         // Store all necessary parameters in cookie
         String codeChallenge = params.getFirst("code_challenge");
         String state = params.getFirst("state");
-        String cookieValue = tenant.getName() + "#" + requestedScope + "$" + redirectUri + 
+        String cookieValue = tenant.name() + "#" + requestedScope + "$" + redirectUri + 
                            "$" + responseType + "$" + codeChallenge + "$" + (state != null ? state : "");
         
         StreamingOutput stream = output -> {
@@ -124,82 +158,106 @@ public class AuthenticationEndpoint {
     @Path("/login/authorization")
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
     @Produces(MediaType.TEXT_HTML)
-    public Response login(@CookieParam(CHALLENGE_RESPONSE_COOKIE_ID) Cookie cookie,
-                          @FormParam("username")String username,
-                          @FormParam("password")String password,
-                          @Context UriInfo uriInfo) throws Exception {
+    public CompletionStage<Response> login(@CookieParam(CHALLENGE_RESPONSE_COOKIE_ID) Cookie cookie,
+                                           @FormParam("username")String username,
+                                           @FormParam("password")String password,
+                                           @Context UriInfo uriInfo,
+                                           @Context HttpServletRequest request) {
         
         if (cookie == null || cookie.getValue() == null) {
-            return informUserAboutError("Invalid session. Please try again.");
+            return CompletableFuture.completedFuture(informUserAboutError("Invalid session. Please try again."));
         }
-        
-        Identity identity = phoenixIAMRepository.findIdentityByUsername(username);
-        if(identity == null) {
-            logger.info("Identity not found: " + username);
-            String[] cookieParts = cookie.getValue().split("\\$");
-            URI location = UriBuilder.fromUri(cookieParts[1])
-                    .queryParam("error", "access_denied")
-                    .queryParam("error_description", "Invalid credentials")
-                    .build();
-            return Response.seeOther(location).build();
+        String address = clientAddress.of(request);
+        long retryAfter = loginThrottle.retryAfter(username,address);
+        if(retryAfter > 0L){
+            logger.warning("Throttled login attempt for identity "+username+" from "+address);
+            return CompletableFuture.completedFuture(Response.fromResponse(informUserAboutError("Too many failed attempts. Please try again later."))
+                    .status(Response.Status.TOO_MANY_REQUESTS)
+                    .header("Retry-After",retryAfter)
+                    .build());
         }
-        
-        if(Argon2Utility.check(identity.getPassword(),password.toCharArray())){
-            logger.info("Authenticated identity:"+username);
-            String[] cookieParts = cookie.getValue().split("\\$");
-            String clientId = cookieParts[0].split("#")[0];
-            String requestedScope = cookieParts[0].split("#")[1];
-            String redirectUri = cookieParts[1];
-            String responseType = cookieParts[2];
-            String codeChallenge = cookieParts[3];
-            String state = cookieParts.length > 4 ? cookieParts[4] : null;
-            
-            Optional<Grant> grant = phoenixIAMRepository.findGrant(clientId, identity.getId());
-            if(grant.isPresent()){
-                String redirectURI = buildActualRedirectURI(
-                        redirectUri, responseType,
-                        clientId,
-                        identity.getId(),
-                        checkUserScopes(grant.get().getApprovedScopes(), requestedScope),
-                        codeChallenge, state
-                );
-                return Response.seeOther(UriBuilder.fromUri(redirectURI).build()).build();
-            }else{
-                StreamingOutput stream = output -> {
-                    try (InputStream is = Objects.requireNonNull(getClass().getResource("/consent.html")).openStream()){
-                        output.write(is.readAllBytes());
+        String[] cookieParts = cookie.getValue().split("\\$");
+        // The request thread is released here: the lookups run on the endpoint executor and the
+        // Argon2 verification on the password hashing pool, the identity read once being passed along.
+        Executor executor = endpointExecutor.executor();
+        return CompletableFuture.supplyAsync(() -> phoenixIAMRepository.findCredentials(username).orElse(null),executor)
+                .thenCompose(identity -> {
+                    if(identity == null) {
+                        logger.info("Identity not found: " + username);
+                        loginThrottle.failed(username,address);
+                        return CompletableFuture.completedFuture(accessDenied(cookieParts[1],"Invalid credentials"));
                     }
-                };
-                return Response.ok(stream).build();
-            }
-        } else {
-            logger.info("Failure when authenticating identity:"+username);
-            String[] cookieParts = cookie.getValue().split("\\$");
-            URI location = UriBuilder.fromUri(cookieParts[1])
-                    .queryParam("error", "access_denied")
-                    .queryParam("error_description", "Invalid credentials")
-                    .build();
-            return Response.seeOther(location).build();
+                    String serverHash = identity.password();
+                    return passwordHashingPool.verify(serverHash,password.toCharArray(),rehashed ->
+                                    executor.execute(() -> phoenixIAMRepository.replacePassword(username,serverHash,rehashed)))
+                            .thenApplyAsync(authenticated -> authenticated ? authenticated(identity,cookieParts)
+                                    : failed(username,address,cookieParts),executor);
+                })
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if(cause instanceof PasswordHashingSaturatedException saturated){
+                        logger.warning("Password hashing saturated, deferring identity:"+username);
+                        return Response.fromResponse(informUserAboutError("The server is busy. Please try again shortly."))
+                                .status(Response.Status.SERVICE_UNAVAILABLE)
+                                .header("Retry-After",saturated.getRetryAfter())
+                                .build();
+                    }
+                    logger.severe("Error when authenticating identity "+username+": "+cause.getMessage());
+                    return serverError(cookieParts[1]);
+                });
+    }
+
+    private Response authenticated(CredentialView identity,String[] cookieParts){
+        logger.info("Authenticated identity:"+identity.username());
+        loginThrottle.succeeded(identity.username());
+        String clientId = cookieParts[0].split("#")[0];
+        String requestedScope = cookieParts[0].split("#")[1];
+        String redirectUri = cookieParts[1];
+        String responseType = cookieParts[2];
+        String codeChallenge = cookieParts[3];
+        String state = cookieParts.length > 4 ? cookieParts[4] : null;
+
+        Optional<GrantView> grant = phoenixIAMRepository.findGrant(clientId, identity.id());
+        if(grant.isPresent()){
+            return redirect(buildActualRedirectURI(
+                    redirectUri, responseType,
+                    clientId,
+                    identity.username(),
+                    checkUserScopes(grant.get().approvedScopes(), requestedScope),
+                    codeChallenge, state
+            ));
         }
+        StreamingOutput stream = output -> {
+            try (InputStream is = Objects.requireNonNull(getClass().getResource("/consent.html")).openStream()){
+                output.write(is.readAllBytes());
+            }
+        };
+        return Response.ok(stream).build();
+    }
+
+    private Response failed(String username,String address,String[] cookieParts){
+        logger.info("Failure when authenticating identity:"+username);
+        loginThrottle.failed(username,address);
+        return accessDenied(cookieParts[1],"Invalid credentials");
     }
 
     @PATCH
     @Path("/login/authorization")
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-    public Response grantConsent(@CookieParam(CHALLENGE_RESPONSE_COOKIE_ID) Cookie cookie,
-                                 @FormParam("approved_scope") String scope,
-                                 @FormParam("approval_status") String approvalStatus,
-                                 @FormParam("username") String username){
+    public CompletionStage<Response> grantConsent(@CookieParam(CHALLENGE_RESPONSE_COOKIE_ID) Cookie cookie,
+                                                  @FormParam("approved_scope") String scope,
+                                                  @FormParam("approval_status") String approvalStatus,
+                                                  @FormParam("username") String username){
         
         if (cookie == null || cookie.getValue() == null) {
-            return Response.status(Response.Status.BAD_REQUEST)
-                    .entity("Invalid session").build();
+            return CompletableFuture.completedFuture(Response.status(Response.Status.BAD_REQUEST)
+                    .entity("Invalid session").build());
         }
         
         String[] cookieParts = cookie.getValue().split("\\$");
         if (cookieParts.length < 4) {
-            return Response.status(Response.Status.BAD_REQUEST)
-                    .entity("Invalid session data").build();
+            return CompletableFuture.completedFuture(Response.status(Response.Status.BAD_REQUEST)
+                    .entity("Invalid session data").build());
         }
         
         String[] clientAndScope = cookieParts[0].split("#");
@@ -214,18 +272,10 @@ public class AuthenticationEndpoint {
                     .queryParam("error", "access_denied")
                     .queryParam("error_description", "User denied the request")
                     .build();
-            return Response.seeOther(location).build();
+            return CompletableFuture.completedFuture(Response.seeOther(location).build());
         }
         //==> YES
-        if (scope == null || scope.trim().isEmpty()) {
-            URI location = UriBuilder.fromUri(redirectUri)
-                    .queryParam("error", "invalid_scope")
-                    .queryParam("error_description", "No scopes approved")
-                    .build();
-            return Response.seeOther(location).build();
-        }
-        
-        List<String> approvedScopes = Arrays.stream(scope.split(" "))
+        List<String> approvedScopes = scope == null ? List.of() : Arrays.stream(scope.split(" "))
                 .filter(s -> !s.isEmpty())
                 .toList();
         if (approvedScopes.isEmpty()) {
@@ -233,44 +283,55 @@ public class AuthenticationEndpoint {
                     .queryParam("error", "invalid_scope")
                     .queryParam("error_description", "No scopes approved")
                     .build();
-            return Response.seeOther(location).build();
+            return CompletableFuture.completedFuture(Response.seeOther(location).build());
         }
         
-        // Find identity by username
-        Identity identity = phoenixIAMRepository.findIdentityByUsername(username);
-        if (identity == null) {
-            URI location = UriBuilder.fromUri(redirectUri)
-                    .queryParam("error", "access_denied")
-                    .queryParam("error_description", "Invalid user")
-                    .build();
-            return Response.seeOther(location).build();
-        }
-        
-        try {
+        return CompletableFuture.supplyAsync(() -> {
+            // Find identity by username
+            RolesView identity = phoenixIAMRepository.findRoles(username).orElse(null);
+            if (identity == null) {
+                return accessDenied(redirectUri,"Invalid user");
+            }
             // Save the grant for future use
-            phoenixIAMRepository.saveGrant(clientId, identity.getId(), String.join(" ", approvedScopes));
-            
-            return Response.seeOther(UriBuilder.fromUri(buildActualRedirectURI(
+            phoenixIAMRepository.saveGrant(clientId, identity.id(), String.join(" ", approvedScopes));
+            return redirect(buildActualRedirectURI(
                     redirectUri, responseType,
-                    clientId, identity.getId(), String.join(" ", approvedScopes), 
+                    clientId, username, String.join(" ", approvedScopes),
                     codeChallenge, state
-            )).build()).build();
-        } catch (Exception e) {
+            ));
+        },endpointExecutor.executor()).exceptionally(e -> {
             logger.severe("Error building redirect URI: " + e.getMessage());
-            URI location = UriBuilder.fromUri(redirectUri)
-                    .queryParam("error", "server_error")
-                    .queryParam("error_description", "Internal server error")
-                    .build();
-            return Response.seeOther(location).build();
-        }
+            return serverError(redirectUri);
+        });
+    }
+
+    private Response redirect(String redirectURI){
+        return Response.seeOther(UriBuilder.fromUri(redirectURI).build()).build();
+    }
+
+    private Response accessDenied(String redirectUri,String description){
+        URI location = UriBuilder.fromUri(redirectUri)
+                .queryParam("error", "access_denied")
+                .queryParam("error_description", description)
+                .build();
+        return Response.seeOther(location).build();
+    }
+
+    private Response serverError(String redirectUri){
+        URI location = UriBuilder.fromUri(redirectUri)
+                .queryParam("error", "server_error")
+                .queryParam("error_description", "Internal server error")
+                .build();
+        return Response.seeOther(location).build();
     }
 
-    private String buildActualRedirectURI(String redirectUri,String responseType,String clientId,String userId,String approvedScopes,String codeChallenge,String state) throws Exception {
+    private String buildActualRedirectURI(String redirectUri,String responseType,String clientId,String username,String approvedScopes,String codeChallenge,String state) {
         StringBuilder sb = new StringBuilder(redirectUri);
         if ("code".equals(responseType)) {
-            AuthorizationCode authorizationCode = new AuthorizationCode(clientId,userId,
-                    approvedScopes, Instant.now().plus(2, ChronoUnit.MINUTES).getEpochSecond(),redirectUri);
-            sb.append("?code=").append(URLEncoder.encode(authorizationCode.getCode(codeChallenge), StandardCharsets.UTF_8));
+            AuthorizationCode authorizationCode = new AuthorizationCode(clientId,username,
+                    approvedScopes, clock.epochSecond()+AUTHORIZATION_CODE_LIFETIME,redirectUri);
+            String code = authorizationCodeKeys.seal(authorizationCode,codeChallenge);
+            sb.append("?code=").append(URLEncoder.encode(code, StandardCharsets.UTF_8));
         } else {
             //Implicit: responseType=token : Not Supported
             return null;
@@ -0,0 +1,139 @@
+package xyz.kaaniche.phoenix.iam.boundaries;
+
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.ejb.EJB;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.eclipse.microprofile.config.ConfigProvider;
+import xyz.kaaniche.phoenix.iam.security.AccessTokenRequest;
+import xyz.kaaniche.phoenix.iam.security.JwtManager;
+import xyz.kaaniche.phoenix.iam.security.Secured;
+
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pre-provisions service tokens: takes a JSON array of
+ * {@code {"tenant_id","subject","scope","roles"}} objects and streams back one
+ * {@code {"index","access_token"}} line per token, in completion order.
+ */
+@Path("/oauth/token/batch")
+@Secured
+@RolesAllowed("root")
+public class BatchTokenEndpoint {
+    private static final String NDJSON = "application/x-ndjson";
+    private static final List<String> STRING_FIELDS = List.of("tenant_id", "subject", "scope");
+    private final int maxBatchSize = ConfigProvider.getConfig().getOptionalValue("jwt.batch.max.size",Integer.class).orElse(10000);
+
+    @EJB
+    private JwtManager jwtManager;
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(NDJSON)
+    public Response tokens(JsonArray batch) {
+        if (batch == null || batch.isEmpty()) {
+            return responseError("Invalid_request", "a non empty array of token requests is required", Response.Status.BAD_REQUEST);
+        }
+        if (batch.size() > maxBatchSize) {
+            return responseError("Invalid_request", "at most " + maxBatchSize + " tokens per batch", Response.Status.REQUEST_ENTITY_TOO_LARGE);
+        }
+        List<AccessTokenRequest> requests = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); ++i) {
+            if (batch.get(i).getValueType() != JsonValue.ValueType.OBJECT) {
+                return responseError("Invalid_request", "a token request object is required at index " + i, Response.Status.BAD_REQUEST);
+            }
+            JsonObject request = batch.getJsonObject(i);
+            for (String field : STRING_FIELDS) {
+                if (!isStringOrNull(request.get(field))) {
+                    return responseError("Invalid_request", field + " must be a string at index " + i, Response.Status.BAD_REQUEST);
+                }
+            }
+            String subject = request.getString("subject", null);
+            if (subject == null || subject.isEmpty()) {
+                return responseError("Invalid_request", "subject is required at index " + i, Response.Status.BAD_REQUEST);
+            }
+            JsonValue roles = request.get("roles");
+            if (!isStringArrayOrNull(roles)) {
+                return responseError("Invalid_request", "roles must be an array of strings at index " + i, Response.Status.BAD_REQUEST);
+            }
+            requests.add(new AccessTokenRequest(request.getString("tenant_id", null), subject,
+                    request.getString("scope", null),
+                    isNull(roles) ? new String[0] : roles.asJsonArray().getValuesAs(JsonString::getString).toArray(new String[0])));
+        }
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        CompletableFuture<Void> done = jwtManager.generateAccessTokens(requests, (token, index) ->
+                lines.add(Json.createObjectBuilder().add("index", index).add("access_token", token).build().toString()));
+        StreamingOutput stream = output -> {
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            int written = 0;
+            try {
+                while (written < requests.size()) {
+                    String line = lines.poll(100, TimeUnit.MILLISECONDS);
+                    if (line != null) {
+                        writer.write(line);
+                        writer.write('\n');
+                        ++written;
+                        if (lines.isEmpty()) {
+                            writer.flush();
+                        }
+                    } else if (done.isCompletedExceptionally()) {
+                        writer.write(Json.createObjectBuilder().add("error", "server_error")
+                                .add("error_description", "Issuance stopped after " + written + " tokens").build().toString());
+                        writer.write('\n');
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writer.flush();
+        };
+        return Response.ok(stream)
+                .header("Cache-Control", "no-store")
+                .header("Pragma", "no-cache")
+                .build();
+    }
+
+    private static boolean isNull(JsonValue value) {
+        return value == null || value.getValueType() == JsonValue.ValueType.NULL;
+    }
+
+    private static boolean isStringOrNull(JsonValue value) {
+        return isNull(value) || value.getValueType() == JsonValue.ValueType.STRING;
+    }
+
+    private static boolean isStringArrayOrNull(JsonValue value) {
+        if (isNull(value)) {
+            return true;
+        }
+        return value.getValueType() == JsonValue.ValueType.ARRAY
+                && value.asJsonArray().stream().allMatch(role -> role.getValueType() == JsonValue.ValueType.STRING);
+    }
+
+    private Response responseError(String error, String errorDescription, Response.Status status) {
+        JsonObject errorResponse = Json.createObjectBuilder()
+                .add("error", error)
+                .add("error_description", errorDescription)
+                .build();
+        return Response.status(status).type(MediaType.APPLICATION_JSON)
+                .entity(errorResponse).build();
+    }
+}
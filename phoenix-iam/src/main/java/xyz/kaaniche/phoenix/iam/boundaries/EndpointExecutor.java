@@ -0,0 +1,119 @@
+package xyz.kaaniche.phoenix.iam.boundaries;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ContextService;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.ConfigProvider;
+import xyz.kaaniche.phoenix.iam.security.CallerContexts;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Where the endpoints run their blocking work, the JPA queries and the token signatures, as chosen by
+ * {@code iam.execution.mode}.
+ * <p>
+ * In the default {@code platform} mode, resource methods run on the server's worker thread and the
+ * asynchronous login stages on the managed executor, both bounded pools of platform threads. In the
+ * {@code virtual} mode, every task gets a virtual thread of its own, so that a request blocked on the
+ * database holds no platform thread and the number of requests in flight is no longer capped by a
+ * pool size. The virtual thread executor is looked up reflectively, the module still targeting Java
+ * 17; on an older runtime the mode falls back to {@code platform} with a warning. Tasks on virtual
+ * threads are given the application's naming, class loader and security context by the container's
+ * {@link ContextService}, and the caller of the request by {@link CallerContexts}. Argon2 keeps its own
+ * bounded pool of platform threads whatever the mode, its memory being the limit rather than threads.
+ */
+@ApplicationScoped
+public class EndpointExecutor {
+    public static final String PLATFORM = "platform";
+    public static final String VIRTUAL = "virtual";
+
+    private final String requestedMode = ConfigProvider.getConfig()
+            .getOptionalValue("iam.execution.mode",String.class).orElse(PLATFORM);
+
+    private final LongAdder dispatched = new LongAdder();
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private CallerContexts callerContexts;
+
+    @Resource
+    private ManagedExecutorService managedExecutorService;
+
+    @Resource
+    private ContextService contextService;
+
+    private ExecutorService virtualThreads;
+
+    @PostConstruct
+    public void start(){
+        if(VIRTUAL.equalsIgnoreCase(requestedMode)){
+            try {
+                virtualThreads = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            }catch (ReflectiveOperationException e){
+                logger.warning("Virtual threads need Java 21 or later, running on "+Runtime.version()
+                        +": falling back to the platform execution mode");
+            }
+        }else if(!PLATFORM.equalsIgnoreCase(requestedMode)){
+            logger.warning("Unknown iam.execution.mode "+requestedMode+": using the platform execution mode");
+        }
+    }
+
+    @PreDestroy
+    public void stop(){
+        if(virtualThreads != null){
+            virtualThreads.shutdown();
+        }
+    }
+
+    /**
+     * @return whether tasks run on virtual threads
+     */
+    public boolean isVirtual(){
+        return virtualThreads != null;
+    }
+
+    public String getMode(){
+        return isVirtual() ? VIRTUAL : PLATFORM;
+    }
+
+    public long getDispatchedCount(){
+        return dispatched.sum();
+    }
+
+    /**
+     * @return an executor for the asynchronous stages of the current request, running them as its
+     * caller on the managed executor or on virtual threads
+     */
+    public Executor executor(){
+        return callerContexts.propagate(isVirtual() ? this::executeVirtual : managedExecutorService);
+    }
+
+    /**
+     * Runs the body of a resource method: on a virtual thread, releasing the worker thread, or right
+     * away on the worker thread in the platform mode.
+     */
+    public <T> CompletionStage<T> dispatch(Supplier<T> body){
+        if(!isVirtual()){
+            return CompletableFuture.completedFuture(body.get());
+        }
+        return CompletableFuture.supplyAsync(body,executor());
+    }
+
+    private void executeVirtual(Runnable task){
+        dispatched.increment();
+        virtualThreads.execute(contextService.contextualRunnable(task));
+    }
+}
@@ -4,11 +4,24 @@ import jakarta.ejb.EJB;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
+import xyz.kaaniche.phoenix.iam.security.JwkDocument;
 import xyz.kaaniche.phoenix.iam.security.JwtManager;
 
+import java.util.Optional;
+
+/**
+ * Publishes the public keys of the signing key ring. Without a kid, the whole JWK set is returned.
+ * Documents are pre-rendered by {@link JwtManager} whenever the ring changes, and carry a strong
+ * ETag so polling resource servers mostly get a 304.
+ */
 @Path("jwk")
 @ApplicationScoped
 public class JWKEndpoint {
@@ -16,11 +29,21 @@ public class JWKEndpoint {
     private JwtManager jwtManager;
 
     @GET
-    public Response getPublicVerificationKey(@QueryParam ("kid") String kid) throws Exception {
-        try {
-            return Response.ok(jwtManager.getPublicValidationKey(kid).toJSONString()).type(MediaType.APPLICATION_JSON).build();
-        }catch (Throwable t){
-            return Response.status(Response.Status.BAD_REQUEST).entity(t.getMessage()).build();
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getPublicVerificationKey(@QueryParam ("kid") String kid, @Context Request request) {
+        Optional<JwkDocument> document = kid == null ? Optional.of(jwtManager.getPublicValidationKeySet())
+                : jwtManager.getPublicValidationKeyDocument(kid);
+        if(document.isEmpty()){
+            return Response.status(Response.Status.NOT_FOUND).entity("Unknown kid").type(MediaType.TEXT_PLAIN).build();
+        }
+        //new keys are published one rotation interval before they sign
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setMaxAge((int) jwtManager.getKeyRotationInterval());
+        EntityTag etag = new EntityTag(document.get().etag());
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(etag);
+        if(notModified != null){
+            return notModified.cacheControl(cacheControl).build();
         }
+        return Response.ok(document.get().content()).tag(etag).cacheControl(cacheControl).build();
     }
 }
@@ -0,0 +1,83 @@
+package xyz.kaaniche.phoenix.iam.boundaries;
+
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.ejb.EJB;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import xyz.kaaniche.phoenix.iam.controllers.BoundedCache;
+import xyz.kaaniche.phoenix.iam.controllers.PhoenixIAMRepository;
+import xyz.kaaniche.phoenix.iam.security.AuthorizationCodeRegistry;
+import xyz.kaaniche.phoenix.iam.security.JwtManager;
+import xyz.kaaniche.phoenix.iam.security.LoginThrottle;
+import xyz.kaaniche.phoenix.iam.security.PasswordHashingPool;
+import xyz.kaaniche.phoenix.iam.security.Secured;
+
+/**
+ * Exposes the IAM internal counters, for capacity planning and alerting.
+ */
+@Path("statistics")
+@ApplicationScoped
+@Secured
+@RolesAllowed("root")
+public class StatisticsEndpoint {
+    @EJB
+    private JwtManager jwtManager;
+
+    @Inject
+    private PasswordHashingPool passwordHashingPool;
+
+    @Inject
+    private LoginThrottle loginThrottle;
+
+    @Inject
+    private PhoenixIAMRepository phoenixIAMRepository;
+
+    @Inject
+    private EndpointExecutor endpointExecutor;
+
+    @Inject
+    private AuthorizationCodeRegistry authorizationCodeRegistry;
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public String getStatistics(){
+        JsonObjectBuilder statistics = Json.createObjectBuilder();
+        jwtManager.getVerifiedTokenCache().ifPresent(cache -> statistics.add("verified_token_cache",
+                Json.createObjectBuilder()
+                        .add("size",cache.size())
+                        .add("hits",cache.hits())
+                        .add("misses",cache.misses())));
+        BoundedCache<?,?> grantCache = phoenixIAMRepository.getGrantCache();
+        statistics.add("grant_cache",Json.createObjectBuilder()
+                .add("size",grantCache.size())
+                .add("hits",grantCache.hits())
+                .add("misses",grantCache.misses()));
+        statistics.add("password_hashing",Json.createObjectBuilder()
+                .add("concurrency",passwordHashingPool.getConcurrency())
+                .add("active",passwordHashingPool.getActiveCount())
+                .add("queued",passwordHashingPool.getQueueDepth())
+                .add("completed",passwordHashingPool.getCompletedCount())
+                .add("rejected",passwordHashingPool.getRejectedCount())
+                .add("mean_latency_ms",passwordHashingPool.getMeanLatency())
+                .add("max_latency_ms",passwordHashingPool.getMaxLatency()));
+        statistics.add("login_throttle",Json.createObjectBuilder()
+                .add("failures",loginThrottle.getFailureCount())
+                .add("lockouts",loginThrottle.getLockoutCount())
+                .add("throttled",loginThrottle.getThrottledCount()));
+        statistics.add("authorization_codes",Json.createObjectBuilder()
+                .add("remembered",authorizationCodeRegistry.size())
+                .add("redeemed",authorizationCodeRegistry.getRedemptionCount())
+                .add("replays",authorizationCodeRegistry.getReplayCount())
+                .add("refused",authorizationCodeRegistry.getRefusedCount()));
+        statistics.add("execution",Json.createObjectBuilder()
+                .add("mode",endpointExecutor.getMode())
+                .add("virtual_thread_tasks",endpointExecutor.getDispatchedCount()));
+        return statistics.build().toString();
+    }
+}
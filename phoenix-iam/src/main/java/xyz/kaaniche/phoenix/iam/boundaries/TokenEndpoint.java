@@ -13,30 +13,52 @@ import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import org.eclipse.microprofile.config.ConfigProvider;
-import xyz.kaaniche.phoenix.iam.controllers.PhoenixIAMRepository;
+import xyz.kaaniche.phoenix.iam.controllers.IdentityContext;
+import xyz.kaaniche.phoenix.iam.controllers.RoleCodec;
+import xyz.kaaniche.phoenix.iam.controllers.RolesView;
 import xyz.kaaniche.phoenix.iam.security.AuthorizationCode;
+import xyz.kaaniche.phoenix.iam.security.AuthorizationCodeKeys;
+import xyz.kaaniche.phoenix.iam.security.AuthorizationCodeRegistry;
+import xyz.kaaniche.phoenix.iam.security.EpochClock;
 import xyz.kaaniche.phoenix.iam.security.JwtManager;
 
 import java.security.GeneralSecurityException;
 import java.text.ParseException;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 
 @Path("/oauth/token")
 public class TokenEndpoint {
     private final Set<String> supportedGrantTypes = Set.of("authorization_code", "refresh_token");
 
     @Inject
-    private PhoenixIAMRepository phoenixIAMRepository;
+    private IdentityContext identityContext;
 
     @EJB
     private JwtManager jwtManager;
 
+    @EJB
+    private AuthorizationCodeKeys authorizationCodeKeys;
+
+    @Inject
+    private EpochClock clock;
+
+    @Inject
+    private EndpointExecutor endpointExecutor;
+
+    @Inject
+    private AuthorizationCodeRegistry authorizationCodeRegistry;
+
     @POST
     @Produces(MediaType.APPLICATION_JSON)
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-    public Response token(@FormParam("grant_type")String grantType,
-                          @FormParam("code") String authCode,
-                          @FormParam("code_verifier")String codeVerifier) {
+    public CompletionStage<Response> token(@FormParam("grant_type")String grantType,
+                                           @FormParam("code") String authCode,
+                                           @FormParam("code_verifier")String codeVerifier) {
+        return endpointExecutor.dispatch(() -> issue(grantType, authCode, codeVerifier));
+    }
+
+    private Response issue(String grantType, String authCode, String codeVerifier) {
         if (grantType == null || grantType.isEmpty())
             return responseError("Invalid_request", "grant_type is required", Response.Status.BAD_REQUEST);
 
@@ -80,10 +102,20 @@ public class TokenEndpoint {
             return Response.ok().build();
         }
         try {
-            AuthorizationCode decoded  = AuthorizationCode.decode(authCode,codeVerifier);
-            assert decoded!=null;
+            AuthorizationCode decoded  = authorizationCodeKeys.open(authCode,codeVerifier);
+            if(decoded == null || decoded.hasExpired(clock.epochSecond())){
+                return responseError("invalid_grant", "The authorization code is invalid or has expired", Response.Status.BAD_REQUEST);
+            }
+            // checked once the verifier matched, so that only the client which asked for it can spend a code
+            if(!authorizationCodeRegistry.redeem(AuthorizationCode.codeId(authCode), decoded.expirationDate())){
+                return responseError("invalid_grant", "The authorization code is invalid or has expired", Response.Status.BAD_REQUEST);
+            }
             String tenantName = decoded.tenantName();
-            String accessToken = jwtManager.generateAccessToken(tenantName, decoded.identityUsername(), decoded.approvedScopes(),phoenixIAMRepository.getRoles(decoded.identityUsername()));
+            RolesView identity = identityContext.findRoles(decoded.identityUsername()).orElse(null);
+            if(identity == null){
+                return responseError("invalid_grant", "The authorization code is invalid or has expired", Response.Status.BAD_REQUEST);
+            }
+            String accessToken = jwtManager.generateAccessToken(tenantName, decoded.identityUsername(), decoded.approvedScopes(),RoleCodec.names(identity.roles()));
             String refreshToken = jwtManager.generateRefreshToken(tenantName, decoded.identityUsername(), decoded.approvedScopes());
             return Response.ok(Json.createObjectBuilder()
                             .add("token_type", "Bearer")
@@ -0,0 +1,38 @@
+package xyz.kaaniche.phoenix.iam.controllers;
+
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Defers cache invalidations until the transaction writing the cached rows has committed. JPA entity
+ * callbacks fire at flush, when other transactions still read the former rows: invalidating then lets
+ * a concurrent load cache them again.
+ */
+final class AfterCommit {
+    private AfterCommit(){
+    }
+
+    /**
+     * Runs an action once the current transaction has committed, or right away outside of any
+     * transaction.
+     */
+    static void run(TransactionSynchronizationRegistry registry,Runnable action){
+        if(registry == null || registry.getTransactionKey() == null){
+            action.run();
+            return;
+        }
+        registry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if(status == Status.STATUS_COMMITTED){
+                    action.run();
+                }
+            }
+        });
+    }
+}
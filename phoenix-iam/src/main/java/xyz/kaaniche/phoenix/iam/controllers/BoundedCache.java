@@ -0,0 +1,144 @@
+package xyz.kaaniche.phoenix.iam.controllers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * A size-bounded, least-recently-used cache safe for concurrent use.
+ * <p>
+ * Entries are spread over independently locked segments, each evicting its own eldest entry,
+ * so threads working on different keys rarely contend. Hits and misses are counted to help
+ * sizing the cache against real traffic.
+ *
+ * @param <K> the key type, which must implement equals and hashCode
+ * @param <V> the value type
+ */
+public final class BoundedCache<K,V> {
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment<K,V>[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public BoundedCache(int maximumSize){
+        if(maximumSize <= 0){
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(maximumSize));
+        int segmentSize = (maximumSize + count - 1) / count;
+        segments = newSegments(count);
+        for(int i = 0; i < count; ++i){
+            segments[i] = new Segment<>(segmentSize);
+        }
+    }
+
+    public V get(K key){
+        Segment<K,V> segment = segmentFor(key);
+        V value;
+        synchronized (segment){
+            value = segment.get(key);
+        }
+        (value == null ? misses : hits).increment();
+        return value;
+    }
+
+    public void put(K key, V value){
+        Segment<K,V> segment = segmentFor(key);
+        synchronized (segment){
+            segment.put(key, value);
+        }
+    }
+
+    /**
+     * @return the value of the key, computed and stored first when absent
+     */
+    public V computeIfAbsent(K key, Function<? super K,? extends V> mapping){
+        Segment<K,V> segment = segmentFor(key);
+        V value;
+        boolean hit;
+        synchronized (segment){
+            value = segment.get(key);
+            hit = value != null;
+            if(!hit){
+                value = mapping.apply(key);
+                segment.put(key, value);
+            }
+        }
+        (hit ? hits : misses).increment();
+        return value;
+    }
+
+    public void remove(K key){
+        Segment<K,V> segment = segmentFor(key);
+        synchronized (segment){
+            segment.remove(key);
+        }
+    }
+
+    /**
+     * Removes every entry matching the filter. This walks the whole cache and is meant for
+     * rare invalidations, not for the request path.
+     */
+    public void removeIf(BiPredicate<? super K,? super V> filter){
+        for(Segment<K,V> segment : segments){
+            synchronized (segment){
+                segment.entrySet().removeIf(e -> filter.test(e.getKey(), e.getValue()));
+            }
+        }
+    }
+
+    public void clear(){
+        for(Segment<K,V> segment : segments){
+            synchronized (segment){
+                segment.clear();
+            }
+        }
+    }
+
+    public int size(){
+        int size = 0;
+        for(Segment<K,V> segment : segments){
+            synchronized (segment){
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long hits(){
+        return hits.sum();
+    }
+
+    public long misses(){
+        return misses.sum();
+    }
+
+    @SuppressWarnings({"unchecked","rawtypes"})
+    private static <K,V> Segment<K,V>[] newSegments(int count){
+        return new Segment[count];
+    }
+
+    private Segment<K,V> segmentFor(K key){
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    private static final class Segment<K,V> extends LinkedHashMap<K,V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity){
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package xyz.kaaniche.phoenix.iam.controllers;
+
+/**
+ * What a login needs from an {@link xyz.kaaniche.phoenix.iam.entities.Identity}, read with the
+ * {@code Identity.credentials} named query instead of loading the entity.
+ *
+ * @param password the Argon2 encoded password hash
+ * @param roles the role bit mask
+ */
+public record CredentialView(Long id,String username,String password,long roles) {
+
+    public RolesView toRolesView(){
+        return new RolesView(id,roles);
+    }
+}
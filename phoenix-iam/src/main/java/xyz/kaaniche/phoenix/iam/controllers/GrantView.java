@@ -0,0 +1,10 @@
+package xyz.kaaniche.phoenix.iam.controllers;
+
+import java.time.LocalDateTime;
+
+/**
+ * The part of a {@link xyz.kaaniche.phoenix.iam.entities.Grant} the authorization flow needs, read
+ * by a projection so that neither the tenant nor the identity row is loaded along with it.
+ */
+public record GrantView(String approvedScopes,LocalDateTime issuanceDateTime) {
+}
@@ -0,0 +1,34 @@
+package xyz.kaaniche.phoenix.iam.controllers;
+
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Remembers the identities read during the current request, so that the identity store, the
+ * endpoints and the token issuance each looking an identity up cost a single query. Work running
+ * outside the request thread has no request context and carries the views it loaded instead.
+ */
+@RequestScoped
+public class IdentityContext {
+    @Inject
+    private PhoenixIAMRepository phoenixIAMRepository;
+
+    private final Map<String,Optional<CredentialView>> credentials = new HashMap<>();
+    private final Map<String,Optional<RolesView>> roles = new HashMap<>();
+
+    public Optional<CredentialView> findCredentials(String username){
+        return credentials.computeIfAbsent(username,phoenixIAMRepository::findCredentials);
+    }
+
+    public Optional<RolesView> findRoles(String username){
+        Optional<CredentialView> known = credentials.get(username);
+        if(known != null){
+            return known.map(CredentialView::toRolesView);
+        }
+        return roles.computeIfAbsent(username,phoenixIAMRepository::findRoles);
+    }
+}
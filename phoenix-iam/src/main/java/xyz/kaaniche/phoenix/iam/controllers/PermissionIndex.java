@@ -0,0 +1,204 @@
+package xyz.kaaniche.phoenix.iam.controllers;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable index of the permissions granted to each role: role, then action, then entity type,
+ * then the set of entity ids, which may be a wildcard.
+ * <p>
+ * A caller's roles come as the mask {@link RoleCodec} encodes; root is allowed everything and guest
+ * (mask 0) only what is granted to guest. The union of the permissions of every distinct mask is
+ * computed on first use and memoised in an open addressing table, so that {@link #allows} is a few
+ * array and hash lookups and allocates nothing.
+ */
+public final class PermissionIndex {
+    private static final int GUEST_SLOT = Long.SIZE-1;
+    private static final int MAX_MEMOISED = 4096;
+    private static final Map<Class<?>,Ids> NO_GRANTS = Collections.emptyMap();
+
+    public static final PermissionIndex EMPTY = new Builder().build();
+
+    /** per role slot, bit position for the roles and {@link #GUEST_SLOT} for guest */
+    private final View[] slots;
+    private volatile Memo memo = new Memo(new long[16],new View[16],0);
+
+    private PermissionIndex(View[] slots){
+        this.slots = slots;
+    }
+
+    public static Builder builder(){
+        return new Builder();
+    }
+
+    /**
+     * @param roleMask the caller's roles, as encoded by {@link RoleCodec}
+     * @param id the id of the entity, or null for an entity not persisted yet
+     * @return whether any of the roles may perform the action on the entity
+     */
+    public boolean allows(long roleMask,SecureAction action,Class<?> type,Object id){
+        if(roleMask == Long.MAX_VALUE){
+            return true;
+        }
+        if(roleMask < 0L){
+            return false;
+        }
+        return view(roleMask).allows(action,type,id);
+    }
+
+    private View view(long roleMask){
+        if(roleMask == 0L){
+            return slots[GUEST_SLOT];
+        }
+        Memo current = memo;
+        View view = current.get(roleMask);
+        if(view != null){
+            return view;
+        }
+        synchronized (this){
+            current = memo;
+            view = current.get(roleMask);
+            if(view == null){
+                view = union(roleMask);
+                if(current.size < MAX_MEMOISED){
+                    memo = current.with(roleMask,view);
+                }
+            }
+            return view;
+        }
+    }
+
+    private View union(long roleMask){
+        View union = new View();
+        for(long bits = roleMask; bits != 0L; bits &= bits-1L){
+            union.addAll(slots[Long.numberOfTrailingZeros(bits)]);
+        }
+        return union.freeze();
+    }
+
+    public static final class Builder {
+        private final View[] slots = new View[Long.SIZE];
+
+        private Builder(){
+            for(int slot = 0; slot < slots.length; ++slot){
+                slots[slot] = new View();
+            }
+        }
+
+        /**
+         * Grants a permission to the roles of a mask. Root needs no grant and negative masks, as
+         * {@link RoleCodec#mask(String)} returns for unknown roles, are ignored.
+         *
+         * @param id the entity id, or null for every entity of the type
+         */
+        public Builder grant(long roleMask,SecureAction action,Class<?> type,Object id){
+            if(roleMask == 0L){
+                slots[GUEST_SLOT].add(action,type,id);
+            }else if(roleMask > 0L && roleMask != Long.MAX_VALUE){
+                for(long bits = roleMask; bits != 0L; bits &= bits-1L){
+                    slots[Long.numberOfTrailingZeros(bits)].add(action,type,id);
+                }
+            }
+            return this;
+        }
+
+        public PermissionIndex build(){
+            View[] frozen = new View[slots.length];
+            for(int slot = 0; slot < slots.length; ++slot){
+                frozen[slot] = slots[slot].freeze();
+            }
+            return new PermissionIndex(frozen);
+        }
+    }
+
+    /**
+     * The permissions of one role or of a union of roles, by action and entity type.
+     */
+    private static final class View {
+        private final EnumMap<SecureAction,Map<Class<?>,Ids>> grants = new EnumMap<>(SecureAction.class);
+
+        boolean allows(SecureAction action,Class<?> type,Object id){
+            Ids ids = grants.getOrDefault(action,NO_GRANTS).get(type);
+            return ids != null && (ids.any() || ids.ids().contains(id));
+        }
+
+        void add(SecureAction action,Class<?> type,Object id){
+            Ids ids = grants.computeIfAbsent(action,a -> new HashMap<>()).computeIfAbsent(type,t -> new Ids(false,new HashSet<>()));
+            if(id == null){
+                grants.get(action).put(type,new Ids(true,Collections.emptySet()));
+            }else if(!ids.any()){
+                ids.ids().add(id);
+            }
+        }
+
+        void addAll(View other){
+            other.grants.forEach((action,types) -> types.forEach((type,ids) -> {
+                if(ids.any()){
+                    add(action,type,null);
+                }else{
+                    ids.ids().forEach(id -> add(action,type,id));
+                }
+            }));
+        }
+
+        View freeze(){
+            View frozen = new View();
+            grants.forEach((action,types) -> {
+                Map<Class<?>,Ids> copy = new HashMap<>();
+                types.forEach((type,ids) -> copy.put(type,new Ids(ids.any(),Collections.unmodifiableSet(new HashSet<>(ids.ids())))));
+                frozen.grants.put(action,Collections.unmodifiableMap(copy));
+            });
+            return frozen;
+        }
+    }
+
+    private record Ids(boolean any,Set<Object> ids){
+    }
+
+    /**
+     * An immutable open addressing table from role masks to their views, replaced as a whole on
+     * insertion so that readers need no lock.
+     */
+    private record Memo(long[] keys,View[] views,int size){
+        View get(long key){
+            int mask = keys.length-1;
+            for(int slot = hash(key)&mask; views[slot] != null; slot = (slot+1)&mask){
+                if(keys[slot] == key){
+                    return views[slot];
+                }
+            }
+            return null;
+        }
+
+        Memo with(long key,View view){
+            int capacity = (size+1)*2 > keys.length ? keys.length*2 : keys.length;
+            Memo grown = new Memo(new long[capacity],new View[capacity],size+1);
+            for(int slot = 0; slot < keys.length; ++slot){
+                if(views[slot] != null){
+                    grown.put(keys[slot],views[slot]);
+                }
+            }
+            grown.put(key,view);
+            return grown;
+        }
+
+        private void put(long key,View view){
+            int mask = keys.length-1;
+            int slot = hash(key)&mask;
+            while (views[slot] != null){
+                slot = (slot+1)&mask;
+            }
+            keys[slot] = key;
+            views[slot] = view;
+        }
+
+        private static int hash(long key){
+            long h = key*0x9E3779B97F4A7C15L;
+            return (int) (h^(h>>>32));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package xyz.kaaniche.phoenix.iam.controllers;
+
+import jakarta.annotation.Resource;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import org.eclipse.microprofile.config.ConfigProvider;
+import xyz.kaaniche.phoenix.iam.entities.RolePermission;
+import xyz.kaaniche.phoenix.iam.security.EpochClock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Loads the {@link RolePermission} rows into a {@link PermissionIndex} on first use, and again once
+ * a change reported by {@link PermissionRegistryListener} has committed, or after
+ * {@code permission.cache.ttl} seconds in case the table was changed by other means or on another
+ * node. Entity types are resolved through the JPA
+ * metamodel, by entity name or class name, and entity ids are converted to the id type of the entity.
+ */
+@ApplicationScoped
+public class PermissionRegistry {
+    private final long ttl = ConfigProvider.getConfig().getOptionalValue("permission.cache.ttl",Long.class).orElse(300L);
+    /** bumped on every invalidation, so a load racing with it does not keep what it read before */
+    private final AtomicLong generation = new AtomicLong();
+
+    @Inject
+    private EntityManager entityManager;
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private EpochClock clock;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    private volatile Entry entry;
+
+    public PermissionIndex index(){
+        long now = clock.epochSecond();
+        Entry current = entry;
+        if(current == null || current.expiresAt() <= now){
+            synchronized (this){
+                current = entry;
+                if(current == null || current.expiresAt() <= now){
+                    long loadedAt = generation.get();
+                    current = new Entry(load(),now+ttl);
+                    if(generation.get() == loadedAt){
+                        entry = current;
+                    }
+                }
+            }
+        }
+        return current.index();
+    }
+
+    /**
+     * Drops the index once the current transaction has committed, or right away outside of any.
+     */
+    public void invalidate(){
+        AfterCommit.run(transactionSynchronizationRegistry,() -> {
+            generation.incrementAndGet();
+            entry = null;
+        });
+    }
+
+    private PermissionIndex load(){
+        Map<String,EntityType<?>> types = new HashMap<>();
+        for(EntityType<?> type:entityManager.getMetamodel().getEntities()){
+            types.put(type.getName(),type);
+            types.put(type.getJavaType().getName(),type);
+        }
+        PermissionIndex.Builder builder = PermissionIndex.builder();
+        for(RolePermission permission:entityManager.createQuery("select p from RolePermission p",RolePermission.class).getResultList()){
+            EntityType<?> type = types.get(permission.getEntityType());
+            if(type == null){
+                logger.warning("Ignoring permission "+permission.getId()+" on unknown entity type "+permission.getEntityType());
+                continue;
+            }
+            String entityId = permission.getEntityId();
+            Object id = null;
+            if(entityId != null && !entityId.equals("*")){
+                id = toId(entityId,type.getIdType().getJavaType());
+                if(id == null){
+                    logger.warning("Ignoring permission "+permission.getId()+" on unsupported id "+entityId);
+                    continue;
+                }
+            }
+            builder.grant(RoleCodec.mask(permission.getRole()),SecureAction.valueOf(permission.getAction()),type.getJavaType(),id);
+        }
+        return builder.build();
+    }
+
+    private static Object toId(String value,Class<?> idType){
+        try {
+            if(idType == String.class) return value;
+            if(idType == Long.class || idType == long.class) return Long.valueOf(value);
+            if(idType == Integer.class || idType == int.class) return Integer.valueOf(value);
+            if(idType == Short.class || idType == short.class) return Short.valueOf(value);
+            if(idType == UUID.class) return UUID.fromString(value);
+        }catch (IllegalArgumentException e){
+            return null;
+        }
+        return null;
+    }
+
+    private record Entry(PermissionIndex index,long expiresAt){
+    }
+}
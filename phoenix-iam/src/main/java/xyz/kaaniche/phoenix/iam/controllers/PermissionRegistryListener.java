@@ -0,0 +1,23 @@
+package xyz.kaaniche.phoenix.iam.controllers;
+
+import jakarta.inject.Inject;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import xyz.kaaniche.phoenix.iam.entities.RolePermission;
+
+/**
+ * Has the {@link PermissionRegistry} reload its index once a permission written through JPA is
+ * committed.
+ */
+public class PermissionRegistryListener {
+    @Inject
+    private PermissionRegistry permissionRegistry;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void reload(RolePermission permission){
+        permissionRegistry.invalidate();
+    }
+}
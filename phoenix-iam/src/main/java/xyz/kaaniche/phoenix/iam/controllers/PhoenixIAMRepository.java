@@ -1,58 +1,134 @@
 package xyz.kaaniche.phoenix.iam.controllers;
 
+import jakarta.annotation.Resource;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import jakarta.persistence.EntityManager;
-import jakarta.persistence.TypedQuery;
-import xyz.kaaniche.phoenix.iam.entities.Grant;
-import xyz.kaaniche.phoenix.iam.entities.Identity;
-import xyz.kaaniche.phoenix.iam.entities.Tenant;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+import xyz.kaaniche.phoenix.iam.security.EpochClock;
 
-import java.util.HashSet;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Singleton
 public class PhoenixIAMRepository {
     @Inject
     private EntityManager entityManager;
 
-    public Tenant findTenantByName(String name){
-        return entityManager.createQuery("select t from Tenant t where name =:name",Tenant.class)
-                .setParameter("name",name)
-                .getSingleResult();
+    @Inject
+    private TenantRegistry tenantRegistry;
+
+    @Inject
+    private EpochClock clock;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    private final Config config = ConfigProvider.getConfig();
+    private final long grantCacheTtl = config.getOptionalValue("grant.cache.ttl",Long.class).orElse(300L);
+    /** grants by tenant name and identity id; a null view caches the absence of a grant */
+    private final BoundedCache<GrantKey,CachedGrant> grants = new BoundedCache<>(
+            config.getOptionalValue("grant.cache.size",Integer.class).orElse(10000));
+    /** bumped on every committed grant, so a load racing with it does not store what it read before */
+    private final AtomicLong grantGeneration = new AtomicLong();
+
+    /**
+     * @return the id, password hash and roles of an identity, without loading the entity
+     */
+    public Optional<CredentialView> findCredentials(String username){
+        return entityManager.createNamedQuery("Identity.credentials",CredentialView.class)
+                .setParameter("username",username)
+                .getResultStream().findFirst();
+    }
+
+    /**
+     * @return the id and roles of an identity, without loading the entity
+     */
+    public Optional<RolesView> findRoles(String username){
+        return entityManager.createNamedQuery("Identity.roles",RolesView.class)
+                .setParameter("username",username)
+                .getResultStream().findFirst();
     }
 
-    public Identity findIdentityByUsername(String username){
-        return entityManager.createQuery("select i from Identity i where username=:username",Identity.class)
+    /**
+     * Replaces the password hash of an identity, unless it no longer is the expected one because the
+     * password was changed or upgraded concurrently.
+     *
+     * @return true when the hash was replaced
+     */
+    @Transactional
+    public boolean replacePassword(String username,String expectedHash,String newHash){
+        return entityManager.createQuery("update Identity i set i.password = :newHash where i.username = :username and i.password = :expectedHash")
+                .setParameter("newHash",newHash)
                 .setParameter("username",username)
-                .getSingleResult();
+                .setParameter("expectedHash",expectedHash)
+                .executeUpdate() == 1;
     }
 
-    public Optional<Grant> findGrant(String tenantName,Long identityId){
-        Tenant tenant = findTenantByName(tenantName);
-        if(tenant==null){
-            throw new IllegalArgumentException("Invalid Client Id!");
+    /**
+     * Looks up the scopes an identity approved for a tenant, from the grant cache or else with a
+     * single projection query joining the tenant by name. A load overlapping the commit of a grant
+     * is returned but not cached, as it may have read the former grant.
+     */
+    public Optional<GrantView> findGrant(String tenantName,Long identityId){
+        GrantKey key = new GrantKey(tenantName,identityId);
+        long now = clock.epochSecond();
+        CachedGrant cached = grants.get(key);
+        if(cached != null && cached.expiresAt() > now){
+            return Optional.ofNullable(cached.grant());
         }
-        return Optional.of(entityManager.createQuery("select g from Grant g where g.id.tenantId =:tenantId and g.id.identityId = :identityId",Grant.class)
-                .setParameter("tenantId",tenant.getId())
+        long loadedAt = grantGeneration.get();
+        Optional<GrantView> grant = entityManager.createQuery("select new xyz.kaaniche.phoenix.iam.controllers.GrantView(g.approvedScopes,g.issuanceDateTime) " +
+                        "from Grant g join g.tenant t where t.name = :tenantName and g.id.identityId = :identityId",GrantView.class)
+                .setParameter("tenantName",tenantName)
                 .setParameter("identityId",identityId)
-                .getSingleResult());
-    }
-    public String[] getRoles(String username){
-        TypedQuery<Long> query = entityManager.createQuery("select i.roles from Identity i where username=:username",Long.class);
-        query.setParameter("username",username);
-        Long roles = query.getSingleResult();
-        Set<String> ret = new HashSet<>();
-        for(Role role:Role.values()){
-            if((roles&role.getValue())!=0L){
-                String value = Role.byValue(role.getValue());
-                if (value==null){
-                    continue;
-                }
-                ret.add(value);
+                .getResultStream().findFirst();
+        if(grantGeneration.get() == loadedAt){
+            grants.put(key,new CachedGrant(grant.orElse(null),now+grantCacheTtl));
+            // a commit evicting between the check and the put
+            if(grantGeneration.get() != loadedAt){
+                grants.remove(key);
             }
         }
-        return ret.toArray(new String[0]);
+        return grant;
+    }
+
+    /**
+     * Records the scopes an identity approved for a tenant, replacing any former grant. The cached
+     * grant is evicted once the transaction commits, and loads that overlapped the commit do not cache
+     * the former one again.
+     */
+    @Transactional
+    public void saveGrant(String tenantName,Long identityId,String approvedScopes){
+        TenantView tenant = tenantRegistry.findByName(tenantName)
+                .orElseThrow(() -> new IllegalArgumentException("Invalid Client Id!"));
+        GrantKey key = new GrantKey(tenantName,identityId);
+        grants.remove(key);
+        AfterCommit.run(transactionSynchronizationRegistry,() -> {
+            grantGeneration.incrementAndGet();
+            grants.remove(key);
+        });
+        entityManager.createNativeQuery("insert into issued_grants (tenant_id,identity_id,approved_scopes,issuance_date_time) " +
+                        "values (?1,?2,?3,?4) on duplicate key update approved_scopes = values(approved_scopes), issuance_date_time = values(issuance_date_time)")
+                .setParameter(1,tenant.id())
+                .setParameter(2,identityId)
+                .setParameter(3,approvedScopes)
+                .setParameter(4,LocalDateTime.ofEpochSecond(clock.epochSecond(),0,ZoneOffset.UTC))
+                .executeUpdate();
+    }
+
+    public BoundedCache<?,?> getGrantCache(){
+        return grants;
+    }
+
+    private record GrantKey(String tenantName,Long identityId){
+    }
+
+    private record CachedGrant(GrantView grant,long expiresAt){
     }
 }
@@ -1,15 +1,20 @@
 package xyz.kaaniche.phoenix.iam.controllers;
 
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.context.ContextNotActiveException;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
-import jakarta.persistence.EntityManager;
 import jakarta.security.enterprise.credential.Credential;
 import jakarta.security.enterprise.credential.UsernamePasswordCredential;
 import jakarta.security.enterprise.identitystore.CredentialValidationResult;
 import jakarta.security.enterprise.identitystore.IdentityStore;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.transaction.Transactional;
-import xyz.kaaniche.phoenix.iam.entities.Identity;
-import xyz.kaaniche.phoenix.iam.security.Argon2Utility;
+import xyz.kaaniche.phoenix.iam.security.ClientAddress;
+import xyz.kaaniche.phoenix.iam.security.LoginThrottle;
+import xyz.kaaniche.phoenix.iam.security.PasswordHashingPool;
+import xyz.kaaniche.phoenix.iam.security.PasswordHashingSaturatedException;
 
 import java.util.*;
 
@@ -17,7 +22,19 @@ import java.util.*;
 @Transactional
 public class PhoenixIdentityStore implements IdentityStore {
     @Inject
-    private EntityManager entityManager;
+    private IdentityContext identityContext;
+    @Inject
+    private PasswordHashingPool passwordHashingPool;
+    @Inject
+    private PhoenixIAMRepository phoenixIAMRepository;
+    @Inject
+    private LoginThrottle loginThrottle;
+    @Inject
+    private ClientAddress clientAddress;
+    @Inject
+    private HttpServletRequest request;
+    @Resource
+    private ManagedExecutorService managedExecutorService;
 
     @Override
     public CredentialValidationResult validate(Credential credential){
@@ -27,33 +44,40 @@ public class PhoenixIdentityStore implements IdentityStore {
         return validate(upc);
     }
     private CredentialValidationResult validate(UsernamePasswordCredential upc){
+        String address = clientAddress();
+        if(loginThrottle.retryAfter(upc.getCaller(),address) > 0L){
+            return CredentialValidationResult.INVALID_RESULT;
+        }
         try {
-            Identity identity = entityManager.
-                    createQuery("select i from Identity i where i.username = :username",Identity.class).
-                    setParameter("username",upc.getCaller()).getSingleResult();
-            Objects.requireNonNull(identity,"Identity should be not null");
-            if(Argon2Utility.check(identity.getPassword(),upc.getPassword().getValue())){
-                return new CredentialValidationResult(upc.getCaller(),toCallerGroups(identity.getRoles()));
+            CredentialView identity = identityContext.findCredentials(upc.getCaller()).orElse(null);
+            if(identity == null){
+                loginThrottle.failed(upc.getCaller(),address);
+                return CredentialValidationResult.INVALID_RESULT;
+            }
+            String serverHash = identity.password();
+            if(passwordHashingPool.check(serverHash,upc.getPassword().getValue(),rehashed ->
+                    managedExecutorService.execute(() -> phoenixIAMRepository.replacePassword(upc.getCaller(),serverHash,rehashed)))){
+                loginThrottle.succeeded(upc.getCaller());
+                return new CredentialValidationResult(upc.getCaller(),RoleCodec.groups(identity.roles()));
             }
+            loginThrottle.failed(upc.getCaller(),address);
             return CredentialValidationResult.INVALID_RESULT;
+        }catch (PasswordHashingSaturatedException e){
+            return CredentialValidationResult.NOT_VALIDATED_RESULT;
         }catch (Throwable e){
             return CredentialValidationResult.INVALID_RESULT;
         }
     }
 
-    private Set<String> toCallerGroups(Long roles){
-        if(roles == 0L) return Collections.singleton(Role.GUEST.id());
-        if(roles == Long.MAX_VALUE) return Collections.singleton(Role.ROOT.id());
-        if (roles<0L){
-            throw new IllegalArgumentException("Permission level cannot be negative");
-        }
-        Set<String> ret = new HashSet<>();
-        for(long value = 1L; value<=62L; ++value){
-            if((value&roles) !=0){
-                ret.add(Role.byValue(value));
-            }
+    /**
+     * @return the address of the client being authenticated, or null outside an HTTP request
+     */
+    private String clientAddress(){
+        try {
+            return clientAddress.of(request);
+        }catch (ContextNotActiveException e){
+            return null;
         }
-        return ret;
     }
 
     @Override
@@ -0,0 +1,127 @@
+package xyz.kaaniche.phoenix.iam.controllers;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decodes the role bit mask stored on identities into role names.
+ * <p>
+ * The names are looked up by bit position in an array built once from {@link Role}, walking only the
+ * set bits of the mask. A mask of 0 decodes to guest and {@link Long#MAX_VALUE} to root alone; any
+ * other mask never includes root. As identities share a handful of distinct masks, every decoded mask
+ * is kept as an immutable set and array, up to {@value #MAX_MEMOISED} of them, so that decoding is a
+ * map lookup and the same instances are handed out again and again. The arrays are shared and must
+ * not be modified.
+ */
+public final class RoleCodec {
+    private static final int MAX_MEMOISED = 4096;
+    private static final String[] NAMES = new String[Long.SIZE-1];
+    private static final Decoded GUEST;
+    private static final Decoded ROOT;
+    private static final Map<Long,Decoded> memo = new ConcurrentHashMap<>();
+    private static final Map<String,Long> masks = new HashMap<>();
+
+    static {
+        for(int bit = 0; bit < NAMES.length; ++bit){
+            NAMES[bit] = Role.byValue(1L<<bit);
+            if(NAMES[bit] != null){
+                masks.put(NAMES[bit],1L<<bit);
+            }
+        }
+        masks.put(Role.GUEST.id(),0L);
+        masks.put(Role.ROOT.id(),Long.MAX_VALUE);
+        GUEST = Decoded.of(Collections.singleton(Role.GUEST.id()));
+        ROOT = Decoded.of(Collections.singleton(Role.ROOT.id()));
+    }
+
+    private RoleCodec(){
+    }
+
+    /**
+     * @return the role names of the mask, in bit order
+     * @throws IllegalArgumentException when the mask is negative
+     */
+    public static Set<String> groups(long mask){
+        return decode(mask).groups();
+    }
+
+    /**
+     * @return the role names of the mask, in bit order, as a shared array which must not be modified
+     * @throws IllegalArgumentException when the mask is negative
+     */
+    public static String[] names(long mask){
+        return decode(mask).names();
+    }
+
+    /**
+     * @return the mask of a single role name: its bit, 0 for guest, {@link Long#MAX_VALUE} for root,
+     * or -1 for an unknown name
+     */
+    public static long mask(String name){
+        Long mask = name == null ? null : masks.get(name);
+        return mask == null ? -1L : mask;
+    }
+
+    /**
+     * Encodes role names back into a mask, the inverse of {@link #groups(long)}. Unknown names are
+     * ignored and root absorbs every other role.
+     */
+    public static long encode(Collection<String> names){
+        long encoded = 0L;
+        for(String name:names){
+            long mask = mask(name);
+            if(mask == Long.MAX_VALUE){
+                return Long.MAX_VALUE;
+            }
+            if(mask > 0L){
+                encoded |= mask;
+            }
+        }
+        return encoded;
+    }
+
+    private static Decoded decode(long mask){
+        if(mask == 0L){
+            return GUEST;
+        }
+        if(mask == Long.MAX_VALUE){
+            return ROOT;
+        }
+        if(mask < 0L){
+            throw new IllegalArgumentException("Permission level cannot be negative");
+        }
+        Decoded decoded = memo.get(mask);
+        if(decoded == null){
+            decoded = walk(mask);
+            if(memo.size() < MAX_MEMOISED){
+                Decoded previous = memo.putIfAbsent(mask,decoded);
+                if(previous != null){
+                    decoded = previous;
+                }
+            }
+        }
+        return decoded;
+    }
+
+    private static Decoded walk(long mask){
+        Set<String> groups = new LinkedHashSet<>();
+        for(long bits = mask; bits != 0L; bits &= bits-1L){
+            String name = NAMES[Long.numberOfTrailingZeros(bits)];
+            if(name != null){
+                groups.add(name);
+            }
+        }
+        return Decoded.of(groups);
+    }
+
+    private record Decoded(Set<String> groups,String[] names){
+        static Decoded of(Set<String> groups){
+            return new Decoded(Collections.unmodifiableSet(groups),groups.toArray(new String[0]));
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package xyz.kaaniche.phoenix.iam.controllers;
+
+/**
+ * The id and role bit mask of an {@link xyz.kaaniche.phoenix.iam.entities.Identity}, read with the
+ * {@code Identity.roles} named query, for the steps which must not see the password hash.
+ */
+public record RolesView(Long id,long roles) {
+}
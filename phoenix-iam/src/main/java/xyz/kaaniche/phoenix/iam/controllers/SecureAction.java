@@ -0,0 +1,8 @@
+package xyz.kaaniche.phoenix.iam.controllers;
+
+/**
+ * The DAO operations subject to authorization by {@link AuthorizationDecorator}.
+ */
+public enum SecureAction {
+    SAVE,EDIT,DELETE
+}
@@ -0,0 +1,105 @@
+package xyz.kaaniche.phoenix.iam.controllers;
+
+import jakarta.annotation.Resource;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import org.eclipse.microprofile.config.ConfigProvider;
+import xyz.kaaniche.phoenix.iam.entities.Tenant;
+import xyz.kaaniche.phoenix.iam.security.EpochClock;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the tenants in memory, by name and by id, so that authorization requests do not query the
+ * database. Entries are evicted by {@link TenantRegistryListener} once a tenant written through JPA
+ * has committed, and expire after {@code tenant.cache.ttl} seconds in case it was changed by other means or on
+ * another node. Unknown tenants are not cached.
+ */
+@ApplicationScoped
+public class TenantRegistry {
+    private final long ttl = ConfigProvider.getConfig().getOptionalValue("tenant.cache.ttl",Long.class).orElse(300L);
+
+    private final Map<String,Entry> byName = new ConcurrentHashMap<>();
+    private final Map<Short,String> names = new ConcurrentHashMap<>();
+    /** bumped on every invalidation, so a load racing with it does not store what it read before */
+    private final AtomicLong generation = new AtomicLong();
+
+    @Inject
+    private EntityManager entityManager;
+
+    @Inject
+    private EpochClock clock;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    public Optional<TenantView> findByName(String name){
+        if(name == null){
+            return Optional.empty();
+        }
+        long now = clock.epochSecond();
+        Entry entry = byName.get(name);
+        if(entry != null && entry.expiresAt() > now){
+            return Optional.of(entry.tenant());
+        }
+        long loadedAt = generation.get();
+        Optional<TenantView> tenant = entityManager.createQuery("select t from Tenant t where t.name = :name",Tenant.class)
+                .setParameter("name",name)
+                .getResultStream().findFirst().map(TenantView::of);
+        tenant.ifPresentOrElse(view -> {
+            if(generation.get() == loadedAt){
+                byName.put(name,new Entry(view,now+ttl));
+                names.put(view.id(),name);
+            }
+        },() -> byName.remove(name));
+        return tenant;
+    }
+
+    public Optional<TenantView> findById(Short id){
+        String name = names.get(id);
+        if(name != null){
+            Optional<TenantView> tenant = findByName(name);
+            if(tenant.isPresent() && tenant.get().id().equals(id)){
+                return tenant;
+            }
+        }
+        return entityManager.createQuery("select t.name from Tenant t where t.id = :id",String.class)
+                .setParameter("id",id)
+                .getResultStream().findFirst().flatMap(this::findByName);
+    }
+
+    /**
+     * Evicts a tenant, by name and by id, once the current transaction has committed, or right away
+     * outside of any: evicting at flush would let a concurrent load cache the former row again.
+     */
+    public void invalidate(Short id,String name){
+        AfterCommit.run(transactionSynchronizationRegistry,() -> evict(id,name));
+    }
+
+    private void evict(Short id,String name){
+        generation.incrementAndGet();
+        if(name != null){
+            byName.remove(name);
+        }
+        if(id != null){
+            String previous = names.remove(id);
+            if(previous != null){
+                byName.remove(previous);
+            }
+        }
+    }
+
+    public void invalidateAll(){
+        generation.incrementAndGet();
+        byName.clear();
+        names.clear();
+    }
+
+    private record Entry(TenantView tenant,long expiresAt){
+    }
+}
@@ -0,0 +1,23 @@
+package xyz.kaaniche.phoenix.iam.controllers;
+
+import jakarta.inject.Inject;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import xyz.kaaniche.phoenix.iam.entities.Tenant;
+
+/**
+ * Evicts a tenant from the {@link TenantRegistry} once its write through JPA has committed. A renamed
+ * tenant is evicted under its former name too, through its id.
+ */
+public class TenantRegistryListener {
+    @Inject
+    private TenantRegistry tenantRegistry;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void evict(Tenant tenant){
+        tenantRegistry.invalidate(tenant.getId(),tenant.getName());
+    }
+}
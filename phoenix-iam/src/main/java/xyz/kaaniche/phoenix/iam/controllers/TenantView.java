@@ -0,0 +1,52 @@
+package xyz.kaaniche.phoenix.iam.controllers;
+
+import xyz.kaaniche.phoenix.iam.entities.Tenant;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * An immutable, detached copy of a {@link Tenant} with its space separated columns already split,
+ * as served by the {@link TenantRegistry}. The secret is deliberately left out.
+ *
+ * @param redirectUri the pre-registered redirect URI, or null when none is registered
+ * @param requiredScopes the required scopes, in their declared order
+ * @param defaultScope the required scopes joined back, used when a request names none
+ */
+public record TenantView(Short id,String name,URI redirectUri,long allowedRoles,
+                         Set<String> requiredScopes,String defaultScope,Set<String> supportedGrantTypes) {
+
+    public static TenantView of(Tenant tenant){
+        Set<String> requiredScopes = split(tenant.getRequiredScopes());
+        return new TenantView(tenant.getId(),tenant.getName(),parse(tenant.getRedirectUri()),
+                tenant.getAllowedRoles() == null ? 0L : tenant.getAllowedRoles(),
+                requiredScopes,String.join(" ",requiredScopes),split(tenant.getSupportedGrantTypes()));
+    }
+
+    public boolean supportsGrantType(String grantType){
+        return supportedGrantTypes.contains(grantType);
+    }
+
+    private static Set<String> split(String value){
+        if(value == null || value.isBlank()){
+            return Collections.emptySet();
+        }
+        Set<String> ret = new LinkedHashSet<>();
+        Arrays.stream(value.trim().split("[\\s,]+")).forEach(ret::add);
+        return Collections.unmodifiableSet(ret);
+    }
+
+    private static URI parse(String redirectUri){
+        if(redirectUri == null || redirectUri.isBlank()){
+            return null;
+        }
+        try {
+            return URI.create(redirectUri.trim());
+        }catch (IllegalArgumentException e){
+            return null;
+        }
+    }
+}
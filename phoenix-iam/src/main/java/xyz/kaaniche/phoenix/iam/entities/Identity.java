@@ -2,6 +2,7 @@ package xyz.kaaniche.phoenix.iam.entities;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.NamedQuery;
 import jakarta.persistence.Table;
 import xyz.kaaniche.phoenix.core.entities.SimplePKEntity;
 
@@ -9,6 +10,8 @@ import java.security.Principal;
 
 @Entity
 @Table(name = "identities")
+@NamedQuery(name = "Identity.credentials",query = "select new xyz.kaaniche.phoenix.iam.controllers.CredentialView(i.id,i.username,i.password,i.roles) from Identity i where i.username = :username")
+@NamedQuery(name = "Identity.roles",query = "select new xyz.kaaniche.phoenix.iam.controllers.RolesView(i.id,i.roles) from Identity i where i.username = :username")
 public class Identity extends SimplePKEntity<Long> implements Principal {
     @Column(length = 191,unique = true,nullable = false)
     private String username;
@@ -0,0 +1,58 @@
+package xyz.kaaniche.phoenix.iam.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
+import jakarta.persistence.Table;
+import xyz.kaaniche.phoenix.core.entities.SimplePKEntity;
+import xyz.kaaniche.phoenix.iam.controllers.PermissionRegistryListener;
+
+/**
+ * Allows a role to perform an action on an entity, or on every entity of a type when the entity id
+ * is null or {@code *}. The table is created by {@code META-INF/sql/role_permissions.sql}.
+ */
+@Entity
+@Table(name = "role_permissions")
+@EntityListeners(PermissionRegistryListener.class)
+public class RolePermission extends SimplePKEntity<Long> {
+    @Column(nullable = false,length = 191)
+    private String role;
+    @Column(nullable = false,length = 16)
+    private String action;
+    @Column(name = "entity_type",nullable = false,length = 191)
+    private String entityType;
+    @Column(name = "entity_id",length = 191)
+    private String entityId;
+
+    public String getRole() {
+        return role;
+    }
+
+    public void setRole(String role) {
+        this.role = role;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public void setAction(String action) {
+        this.action = action;
+    }
+
+    public String getEntityType() {
+        return entityType;
+    }
+
+    public void setEntityType(String entityType) {
+        this.entityType = entityType;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public void setEntityId(String entityId) {
+        this.entityId = entityId;
+    }
+}
@@ -2,11 +2,14 @@ package xyz.kaaniche.phoenix.iam.entities;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.Table;
 import xyz.kaaniche.phoenix.core.entities.SimplePKEntity;
+import xyz.kaaniche.phoenix.iam.controllers.TenantRegistryListener;
 
 @Entity
 @Table(name = "tenants")
+@EntityListeners(TenantRegistryListener.class)
 public class Tenant extends SimplePKEntity<Short> {
     @Column(name = "tenant_id",nullable = false,unique = true,length = 191)
     private String name;
@@ -0,0 +1,12 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+/**
+ * One access token to issue in a batch, see {@link JwtManager#generateAccessTokens}.
+ *
+ * @param tenantId       the tenant the token is issued for
+ * @param subject        the subject of the token
+ * @param approvedScopes the space separated scopes
+ * @param roles          the roles of the subject
+ */
+public record AccessTokenRequest(String tenantId, String subject, String approvedScopes, String[] roles) {
+}
@@ -0,0 +1,235 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * Serializes and signs Phoenix access tokens without going through the Nimbus claims builder.
+ * <p>
+ * Access tokens always have the same claim layout, so the claim order Nimbus writes and the static
+ * {@code iss} and {@code aud} fragments are taken once from a template rendered by Nimbus itself.
+ * The payload is then written straight into a reusable per-thread buffer. Values that Nimbus would
+ * escape are not handled here: {@link #write} returns null and the caller falls back to Nimbus, so
+ * the produced tokens are always byte for byte the ones Nimbus would have produced.
+ */
+final class AccessTokenWriter {
+    private static final int ISS = 0, AUD = 1, SUB = 2, UPN = 3, TENANT = 4, SCOPE = 5, ROLES = 6, JTI = 7,
+            IAT = 8, NBF = 9, EXP = 10;
+    private static final char[] BASE64URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+    private static final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+    private final int[] order;
+    private final String[] prefixes;
+    private final String issuer;
+    private final String audience;
+    private final long lifetime;
+
+    /**
+     * @param template an access token claims set with every claim set, rendered by Nimbus to learn the layout
+     * @param claimRoles the name of the roles claim
+     * @param lifetime the access token lifetime in seconds
+     */
+    AccessTokenWriter(JWTClaimsSet template, String claimRoles, long lifetime) {
+        String[] names = {"iss", "aud", "sub", "upn", "tenant_id", "scope", claimRoles, "jti", "iat", "nbf", "exp"};
+        prefixes = Arrays.stream(names).map(name -> '"' + name + "\":").toArray(String[]::new);
+        String json = template.toString();
+        int[] positions = Arrays.stream(prefixes).mapToInt(json::indexOf).toArray();
+        if (Arrays.stream(positions).anyMatch(position -> position < 0)) {
+            throw new IllegalStateException("Unexpected access token layout: " + json);
+        }
+        order = IntStream.range(0, names.length).boxed()
+                .sorted(Comparator.comparingInt(claim -> positions[claim]))
+                .mapToInt(Integer::intValue).toArray();
+        issuer = fragment(json, positions, ISS);
+        audience = template.getAudience().isEmpty() ? null : fragment(json, positions, AUD);
+        this.lifetime = lifetime;
+    }
+
+    /**
+     * @return the signed compact token, or null when a value would need JSON escaping
+     */
+    String write(SigningKey key, String tenantId, String subject, String approvedScopes, String[] roles,
+                 UUID jti, long issuedAt) throws JOSEException {
+        Buffers buffer = buffers.get();
+        StringBuilder json = buffer.json();
+        json.setLength(0);
+        json.append('{');
+        for (int claim : order) {
+            int mark = json.length();
+            if (mark > 1) {
+                json.append(',');
+            }
+            int start = json.length();
+            boolean plain = switch (claim) {
+                case ISS -> appendFragment(json, issuer);
+                case AUD -> appendFragment(json, audience);
+                case SUB, UPN -> appendString(json, claim, subject);
+                case TENANT -> appendString(json, claim, tenantId);
+                case SCOPE -> appendString(json, claim, approvedScopes);
+                case ROLES -> appendStrings(json, claim, roles);
+                case JTI -> appendUUID(json, claim, jti);
+                case IAT, NBF -> appendLong(json, claim, issuedAt);
+                default -> appendLong(json, claim, issuedAt + lifetime);
+            };
+            if (!plain) {
+                return null;
+            }
+            if (json.length() == start) {
+                //null claims are left out, like Nimbus does
+                json.setLength(mark);
+            }
+        }
+        json.append('}');
+
+        StringBuilder token = buffer.token();
+        token.setLength(0);
+        token.append(key.encodedHeader()).append('.');
+        appendBase64Url(json, token);
+        byte[] signingInput = new byte[token.length()];
+        for (int i = 0; i < signingInput.length; ++i) {
+            signingInput[i] = (byte) token.charAt(i);
+        }
+        token.append('.').append(key.signer().sign(key.header(), signingInput));
+        String compact = token.toString();
+        buffer.trim();
+        return compact;
+    }
+
+    private static String fragment(String json, int[] positions, int claim) {
+        int end = json.length() - 1;
+        for (int position : positions) {
+            if (position > positions[claim] && position - 1 < end) {
+                end = position - 1;
+            }
+        }
+        return json.substring(positions[claim], end);
+    }
+
+    private static boolean appendFragment(StringBuilder json, String fragment) {
+        if (fragment != null) {
+            json.append(fragment);
+        }
+        return true;
+    }
+
+    private boolean appendString(StringBuilder json, int claim, String value) {
+        if (value == null) {
+            return true;
+        }
+        if (!isPlain(value)) {
+            return false;
+        }
+        json.append(prefixes[claim]).append('"').append(value).append('"');
+        return true;
+    }
+
+    private boolean appendStrings(StringBuilder json, int claim, String[] values) {
+        if (values == null) {
+            return true;
+        }
+        json.append(prefixes[claim]).append('[');
+        for (int i = 0; i < values.length; ++i) {
+            if (values[i] == null || !isPlain(values[i])) {
+                return false;
+            }
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('"').append(values[i]).append('"');
+        }
+        json.append(']');
+        return true;
+    }
+
+    private boolean appendUUID(StringBuilder json, int claim, UUID uuid) {
+        json.append(prefixes[claim]).append('"');
+        appendHex(json, uuid.getMostSignificantBits() >>> 32, 8);
+        json.append('-');
+        appendHex(json, uuid.getMostSignificantBits() >>> 16, 4);
+        json.append('-');
+        appendHex(json, uuid.getMostSignificantBits(), 4);
+        json.append('-');
+        appendHex(json, uuid.getLeastSignificantBits() >>> 48, 4);
+        json.append('-');
+        appendHex(json, uuid.getLeastSignificantBits(), 12);
+        json.append('"');
+        return true;
+    }
+
+    private boolean appendLong(StringBuilder json, int claim, long value) {
+        json.append(prefixes[claim]).append(value);
+        return true;
+    }
+
+    private static void appendHex(StringBuilder json, long value, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            json.append(HEX[(int) (value >>> shift) & 0xF]);
+        }
+    }
+
+    /**
+     * @return true when Nimbus writes the value as is: printable ASCII without quote nor backslash
+     */
+    private static boolean isPlain(String value) {
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c > 0x7E || c == '"' || c == '\\') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Unpadded Base64url encoding of ASCII characters.
+     */
+    private static void appendBase64Url(CharSequence src, StringBuilder dst) {
+        int length = src.length();
+        int i = 0;
+        for (; i + 2 < length; i += 3) {
+            int bits = src.charAt(i) << 16 | src.charAt(i + 1) << 8 | src.charAt(i + 2);
+            dst.append(BASE64URL[bits >>> 18 & 0x3F]).append(BASE64URL[bits >>> 12 & 0x3F])
+                    .append(BASE64URL[bits >>> 6 & 0x3F]).append(BASE64URL[bits & 0x3F]);
+        }
+        if (length - i == 1) {
+            int bits = src.charAt(i) << 16;
+            dst.append(BASE64URL[bits >>> 18 & 0x3F]).append(BASE64URL[bits >>> 12 & 0x3F]);
+        } else if (length - i == 2) {
+            int bits = src.charAt(i) << 16 | src.charAt(i + 1) << 8;
+            dst.append(BASE64URL[bits >>> 18 & 0x3F]).append(BASE64URL[bits >>> 12 & 0x3F])
+                    .append(BASE64URL[bits >>> 6 & 0x3F]);
+        }
+    }
+
+    private static final class Buffers {
+        private StringBuilder json = new StringBuilder(512);
+        private StringBuilder token = new StringBuilder(1024);
+
+        StringBuilder json() {
+            return json;
+        }
+
+        StringBuilder token() {
+            return token;
+        }
+
+        /**
+         * Drops buffers grown by an unusually large token, so they do not stay pinned to the thread.
+         */
+        void trim() {
+            if (json.capacity() > MAX_RETAINED_CAPACITY) {
+                json = new StringBuilder(512);
+            }
+            if (token.capacity() > MAX_RETAINED_CAPACITY) {
+                token = new StringBuilder(1024);
+            }
+        }
+    }
+}
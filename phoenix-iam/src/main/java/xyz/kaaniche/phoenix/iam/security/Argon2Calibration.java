@@ -0,0 +1,63 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import de.mkammerer.argon2.Argon2;
+import de.mkammerer.argon2.Argon2Helper;
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.util.logging.Logger;
+
+/**
+ * Tunes the Argon2id cost of new hashes to the hardware at startup when {@code argon2.calibrate} is
+ * enabled: the memory is taken from {@code argon2.calibration.memory} KiB, capped by
+ * {@code argon2.memory}, halved while a single pass
+ * exceeds {@code argon2.calibration.target} milliseconds, and the iterations are raised as far as the
+ * target allows. Existing hashes keep verifying and are upgraded on the next successful login.
+ */
+@Startup
+@Singleton
+public class Argon2Calibration {
+    /** The OWASP minimum for Argon2id, 19 MiB. */
+    private static final int MIN_MEMORY = 19456;
+
+    @Inject
+    private Logger logger;
+
+    private final Config config = ConfigProvider.getConfig();
+
+    @PostConstruct
+    public void calibrate(){
+        if(!config.getOptionalValue("argon2.calibrate",Boolean.class).orElse(false)){
+            return;
+        }
+        long target = config.getOptionalValue("argon2.calibration.target",Long.class).orElse(500L);
+        Argon2Parameters configured = Argon2Utility.getParameters();
+        Argon2Parameters calibrated = calibrate(Argon2Utility.getArgon2(),target,
+                Math.min(configured.memory(),
+                        config.getOptionalValue("argon2.calibration.memory",Integer.class).orElse(configured.memory())),
+                configured.threads());
+        Argon2Utility.setParameters(calibrated);
+        logger.info("Argon2 calibrated for "+target+"ms: "+calibrated);
+    }
+
+    static Argon2Parameters calibrate(Argon2 argon2,long target,int memory,int threads){
+        while (true){
+            int iterations = Argon2Helper.findIterations(argon2,target,memory,threads);
+            if(iterations > 1 || memory <= MIN_MEMORY || singlePass(argon2,memory,threads) <= target){
+                return new Argon2Parameters(iterations,memory,threads);
+            }
+            memory = Math.max(MIN_MEMORY,memory/2);
+        }
+    }
+
+    private static long singlePass(Argon2 argon2,int memory,int threads){
+        char[] password = "calibration".toCharArray();
+        long start = System.nanoTime();
+        argon2.hash(1,memory,threads,password);
+        return (System.nanoTime()-start)/1_000_000L;
+    }
+}
@@ -0,0 +1,60 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import java.util.Optional;
+
+/**
+ * The Argon2id cost parameters, as configured or as read back from a PHC encoded hash such as
+ * {@code $argon2id$v=19$m=97579,t=23,p=2$salt$hash}.
+ *
+ * @param iterations the number of passes over the memory ({@code t})
+ * @param memory the memory size in KiB ({@code m})
+ * @param threads the degree of parallelism ({@code p})
+ */
+public record Argon2Parameters(int iterations,int memory,int threads) {
+
+    /**
+     * Tells whether these parameters cost less than the given ones on both the iterations and the
+     * memory. Parameters trading one for the other are not comparable, so that nodes calibrated
+     * differently do not rehash each other's hashes back and forth; the parallelism does not add to
+     * the cost of an attack and is ignored.
+     *
+     * @return true when neither the iterations nor the memory exceed the other's, and one is lower
+     */
+    public boolean isWeakerThan(Argon2Parameters other){
+        return iterations <= other.iterations && memory <= other.memory
+                && (iterations < other.iterations || memory < other.memory);
+    }
+
+    /**
+     * @return the parameters encoded in the given hash, or empty when it is not a PHC Argon2 string
+     */
+    public static Optional<Argon2Parameters> parse(String encodedHash){
+        if(encodedHash == null || !encodedHash.startsWith("$argon2")){
+            return Optional.empty();
+        }
+        for(String segment:encodedHash.split("\\$")){
+            if(!segment.startsWith("m=")){
+                continue;
+            }
+            int iterations = -1, memory = -1, threads = -1;
+            try {
+                for(String parameter:segment.split(",")){
+                    int value = Integer.parseInt(parameter.substring(2));
+                    switch (parameter.substring(0,2)){
+                        case "m=" -> memory = value;
+                        case "t=" -> iterations = value;
+                        case "p=" -> threads = value;
+                        default -> { return Optional.empty(); }
+                    }
+                }
+            }catch (NumberFormatException | IndexOutOfBoundsException e){
+                return Optional.empty();
+            }
+            if(iterations < 1 || memory < 1 || threads < 1){
+                return Optional.empty();
+            }
+            return Optional.of(new Argon2Parameters(iterations,memory,threads));
+        }
+        return Optional.empty();
+    }
+}
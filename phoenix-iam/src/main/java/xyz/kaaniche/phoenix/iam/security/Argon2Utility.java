@@ -12,12 +12,15 @@ public class Argon2Utility implements PasswordHash {
     private static final int hashLength = config.getValue("argon2.hashLength",Integer.class);
     private static final Argon2 argon2 = Argon2Factory.
             create(Argon2Factory.Argon2Types.ARGON2id,saltLength,hashLength);
-    private static final int iterations = config.getValue("argon2.iterations",Integer.class);
-    private static final int memory = config.getValue("argon2.memory",Integer.class);
-    private static final int threads = config.getValue("argon2.threads",Integer.class);
+    private static volatile Argon2Parameters parameters = new Argon2Parameters(
+            config.getValue("argon2.iterations",Integer.class),
+            config.getValue("argon2.memory",Integer.class),
+            config.getValue("argon2.threads",Integer.class));
+
     public static String hash(char[] clientHash){
+        Argon2Parameters current = parameters;
         try{
-            return argon2.hash(iterations,memory,threads,clientHash);
+            return argon2.hash(current.iterations(),current.memory(),current.threads(),clientHash);
         }finally {
             argon2.wipeArray(clientHash);
         }
@@ -31,6 +34,26 @@ public class Argon2Utility implements PasswordHash {
        }
     }
 
+    /**
+     * @return true when the given hash was computed with parameters weaker than the ones new hashes use
+     * @see Argon2Parameters#isWeakerThan(Argon2Parameters)
+     */
+    public static boolean needsRehash(String serverHash){
+        return Argon2Parameters.parse(serverHash).map(encoded -> encoded.isWeakerThan(parameters)).orElse(false);
+    }
+
+    public static Argon2Parameters getParameters(){
+        return parameters;
+    }
+
+    static void setParameters(Argon2Parameters parameters){
+        Argon2Utility.parameters = parameters;
+    }
+
+    static Argon2 getArgon2(){
+        return argon2;
+    }
+
     @Override
     public String generate(char[] password) {
         return hash(password);
@@ -1,16 +1,15 @@
 package xyz.kaaniche.phoenix.iam.security;
 
-import com.nimbusds.jwt.JWT;
 import com.nimbusds.jwt.JWTClaimsSet;
 import jakarta.annotation.Priority;
 import jakarta.ejb.EJBException;
 import jakarta.security.enterprise.CallerPrincipal;
+import jakarta.inject.Inject;
 import jakarta.ws.rs.Priorities;
 import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.container.ContainerRequestFilter;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
-import jakarta.ws.rs.core.SecurityContext;
 import jakarta.ws.rs.ext.Provider;
 import org.eclipse.microprofile.config.Config;
 import org.eclipse.microprofile.config.ConfigProvider;
@@ -18,8 +17,6 @@ import org.eclipse.microprofile.config.ConfigProvider;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import java.security.Principal;
-import java.text.ParseException;
-import java.util.Arrays;
 import java.util.Optional;
 
 @Secured
@@ -27,11 +24,16 @@ import java.util.Optional;
 @Priority(Priorities.AUTHENTICATION)
 public class AuthenticationFilter implements ContainerRequestFilter {
     private static final Config config = ConfigProvider.getConfig();
-    private static final String REALM = config.getValue("mp.jwt.realm",String.class);
-
-    private static final String CLAIM_ROLES = config.getValue("jwt.claim.roles",String.class);
+    private static final String REALM = config.getOptionalValue("mp.jwt.realm",String.class)
+            .orElseGet(() -> config.getValue("jwt.realm",String.class));
     private static final String AUTHENTICATION_SCHEME = "Bearer";
 
+    @Inject
+    private CallerContextHolder callerContextHolder;
+
+    /** resolved on first use and kept, the singleton's reference being safe to share across requests */
+    private volatile JwtManager jwtManager;
+
     @Override
     public void filter(ContainerRequestContext requestContext) {
         // Get the Authorization header from the request
@@ -50,44 +52,34 @@ public class AuthenticationFilter implements ContainerRequestFilter {
 
         try {
             // Validate the token
-            InitialContext context = new InitialContext();
-            JwtManager manager = (JwtManager) context.lookup("java:module/JwtManager");//the last value in the jndi name must match the name of the EJB class managing your JWT
-            Optional<JWT> jwt = manager.validateJWT(token);
+            Optional<VerifiedToken> jwt = jwtManager().verify(token);
             if(jwt.isPresent()){
-                JWTClaimsSet claims = jwt.get().getJWTClaimsSet();
-                final String[] roles = claims.getStringArrayClaim(CLAIM_ROLES);
+                JWTClaimsSet claims = jwt.get().claims();
                 final Principal userPrincipal = new CallerPrincipal(claims.getSubject());
                 final boolean isSecure = requestContext.getSecurityContext().isSecure();
 
-                IdentityUtility.iAm(claims.getSubject());
-
-                requestContext.setSecurityContext(new SecurityContext() {
-                    @Override
-                    public Principal getUserPrincipal() {
-                        return userPrincipal;
-                    }
-
-                    @Override
-                    public boolean isUserInRole(String role) {
-                        return Arrays.asList(roles).contains(role);
-                    }
+                callerContextHolder.set(CallerContext.of(jwt.get()));
 
-                    @Override
-                    public boolean isSecure() {
-                        return isSecure;
-                    }
-
-                    @Override
-                    public String getAuthenticationScheme() {
-                        return AUTHENTICATION_SCHEME;
-                    }
-                });
+                requestContext.setSecurityContext(new PhoenixSecurityContext(userPrincipal,
+                        jwt.get().roleMask(),isSecure,AUTHENTICATION_SCHEME));
+            }else{
+                abortWithUnauthorized(requestContext);
             }
-        } catch (EJBException | ParseException | NamingException e) {
+        } catch (EJBException | NamingException e) {
             abortWithUnauthorized(requestContext);
         }
     }
 
+    private JwtManager jwtManager() throws NamingException {
+        JwtManager manager = jwtManager;
+        if (manager == null) {
+            //the last value in the jndi name must match the name of the EJB class managing your JWT
+            manager = (JwtManager) new InitialContext().lookup("java:module/JwtManager");
+            jwtManager = manager;
+        }
+        return manager;
+    }
+
     private boolean isTokenBasedAuthentication(String authorizationHeader) {
         // Check if the Authorization header is valid
         // It must not be null and must be prefixed with "Bearer" plus a whitespace
@@ -1,6 +1,6 @@
 package xyz.kaaniche.phoenix.iam.security;
 
-import javax.crypto.KeyGenerator;
+import javax.crypto.AEADBadTagException;
 import javax.crypto.SecretKey;
 import javax.crypto.Cipher;
 import javax.crypto.spec.IvParameterSpec;
@@ -12,59 +12,114 @@ import java.security.MessageDigest;
 import java.util.Base64;
 import java.util.UUID;
 
+/**
+ * The grant an authorization code stands for. A code reads
+ * {@code urn:phoenix:code:<id>:<kid>:<payload>:<sealed challenge>}: the PKCE challenge is encrypted
+ * with the ChaCha20-Poly1305 {@link CodeKey} named by the kid, the random id, the kid and the
+ * Base64 payload being authenticated along as associated data, so none of them can be altered.
+ * Codes are sealed and opened through {@link AuthorizationCodeKeys}, whose keys every node shares.
+ */
 public record AuthorizationCode(String tenantName, String identityUsername,
                                 String approvedScopes, Long expirationDate,
                                 String redirectUri){
-    private static final SecretKey key;
-
     private static final String codePrefix = "urn:phoenix:code:";
 
-    static {
+    /**
+     * @param key the key to seal the code with, as given by {@link CodeKeyRing#sealingKey(long)}
+     */
+    public String getCode(CodeKey key,String codeChallenge) throws Exception {
+        String code = UUID.randomUUID().toString();
+        String payload = Base64.getEncoder().withoutPadding().encodeToString((tenantName+":"+identityUsername
+                +":"+approvedScopes+":"+expirationDate+":"+redirectUri).getBytes(StandardCharsets.UTF_8));
+        code = codePrefix+code+":"+key.kid()+":"+payload;
+        return code+":"+Base64.getEncoder().withoutPadding().encodeToString(ChaCha20Poly1305.encrypt(
+                codeChallenge.getBytes(StandardCharsets.UTF_8),code.getBytes(StandardCharsets.UTF_8),key.key()));
+    }
+
+    /**
+     * @param epochSecond the current time
+     * @return true once the code can no longer be redeemed
+     */
+    public boolean hasExpired(long epochSecond){
+        return expirationDate == null || epochSecond > expirationDate;
+    }
+
+    /**
+     * @return the random id of a code, which tells codes apart for {@link AuthorizationCodeRegistry},
+     * or null when the code is malformed
+     */
+    public static UUID codeId(String authorizationCode){
+        if(authorizationCode == null || !authorizationCode.startsWith(codePrefix)){
+            return null;
+        }
+        int end = authorizationCode.indexOf(':',codePrefix.length());
         try {
-            key = KeyGenerator.getInstance("CHACHA20").generateKey();
-        } catch (GeneralSecurityException e) {
-            throw new RuntimeException(e);
+            return UUID.fromString(authorizationCode.substring(codePrefix.length(),end < 0 ? authorizationCode.length() : end));
+        } catch (IllegalArgumentException e) {
+            return null;
         }
     }
 
-    public String getCode(String codeChallenge) throws Exception {
-        String code = UUID.randomUUID().toString();
-        String payload = Base64.getEncoder().withoutPadding().encodeToString((tenantName+":"+identityUsername
-                +":"+approvedScopes+":"+expirationDate+":"+redirectUri).getBytes(StandardCharsets.UTF_8));
-        String associatedData =  codePrefix+code;
-        code = codePrefix+code+":"+payload;
-        return code+":"+Base64.getEncoder().withoutPadding().encodeToString(ChaCha20Poly1305.encrypt(codeChallenge.getBytes(),key));
+    /**
+     * @return the kid of the key which sealed a code, or null when the code is malformed
+     */
+    public static String kid(String authorizationCode){
+        String[] fields = fields(authorizationCode);
+        return fields == null ? null : fields[1];
     }
 
-    public static AuthorizationCode decode(String authorizationCode,String codeVerifier) throws Exception {
+    /**
+     * @return the code, or null when its key is not in the ring, it was tampered with or the verifier
+     * does not match its challenge
+     */
+    public static AuthorizationCode decode(String authorizationCode,String codeVerifier,CodeKeyRing keyRing) throws Exception {
+        String[] fields = fields(authorizationCode);
+        CodeKey key = fields == null ? null : keyRing.find(fields[1]);
+        if(key == null || codeVerifier == null){
+            return null;
+        }
         int pos = authorizationCode.lastIndexOf(':');
-        String code = authorizationCode.substring(0,pos);
-        String cipherCodeChallenge = authorizationCode.substring(pos+1);
+        byte[] challenge;
+        try {
+            challenge = ChaCha20Poly1305.decrypt(Base64.getDecoder().decode(fields[3]),
+                    authorizationCode.substring(0,pos).getBytes(StandardCharsets.UTF_8),key.key());
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            return null;
+        }
         MessageDigest digest = MessageDigest.getInstance("SHA-256");
         digest.update(codeVerifier.getBytes(StandardCharsets.UTF_8));
         String expected = Base64.getEncoder().withoutPadding().encodeToString(digest.digest());
-        if(!expected.equals(new String(ChaCha20Poly1305.decrypt(Base64.getDecoder().decode(cipherCodeChallenge),key),StandardCharsets.UTF_8).replace('_','/').replace('-','+'))){
-            System.out.println(expected+" ?= "+ new String(ChaCha20Poly1305.decrypt(Base64.getDecoder().decode(cipherCodeChallenge),key),StandardCharsets.UTF_8));
+        if(!expected.equals(new String(challenge,StandardCharsets.UTF_8).replace('_','/').replace('-','+'))){
             return null;
         }
-        code = code.substring(codePrefix.length());
-        pos = code.lastIndexOf(':');
-        code = new String(Base64.getDecoder().decode(code.substring(pos+1)),StandardCharsets.UTF_8);
-        String[] attributes = code.split(":");
+        String[] attributes = new String(Base64.getDecoder().decode(fields[2]),StandardCharsets.UTF_8).split(":");
         return new AuthorizationCode(attributes[0],attributes[1],attributes[2],
                 Long.parseLong(attributes[3]),attributes[4]+":"+attributes[5]);
     }
+
+    /**
+     * @return the id, kid, payload and sealed challenge of a code, or null when it is malformed
+     */
+    private static String[] fields(String authorizationCode){
+        if(authorizationCode == null || !authorizationCode.startsWith(codePrefix)){
+            return null;
+        }
+        String[] fields = authorizationCode.substring(codePrefix.length()).split(":",-1);
+        return fields.length == 4 ? fields : null;
+    }
+
     private static class ChaCha20Poly1305 {
 
         private static final String ENCRYPT_ALGO = "ChaCha20-Poly1305";
         private static final int NONCE_LEN = 12; // 96 bits, 12 bytes
+        private static final int TAG_LEN = 16; // Poly1305
 
         // if no nonce, generate a random 12 bytes nonce
-        public static byte[] encrypt(byte[] pText, SecretKey key) throws Exception {
-            return encrypt(pText, key, getNonce());
+        public static byte[] encrypt(byte[] pText, byte[] aad, SecretKey key) throws Exception {
+            return encrypt(pText, aad, key, getNonce());
         }
 
-        public static byte[] encrypt(byte[] pText, SecretKey key, byte[] nonce) throws Exception {
+        public static byte[] encrypt(byte[] pText, byte[] aad, SecretKey key, byte[] nonce) throws Exception {
 
             Cipher cipher = Cipher.getInstance(ENCRYPT_ALGO);
 
@@ -72,6 +127,7 @@ public record AuthorizationCode(String tenantName, String identityUsername,
             IvParameterSpec iv = new IvParameterSpec(nonce);
 
             cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+            cipher.updateAAD(aad);
 
             byte[] encryptedText = cipher.doFinal(pText);
 
@@ -84,8 +140,11 @@ public record AuthorizationCode(String tenantName, String identityUsername,
             return output;
         }
 
-        public static byte[] decrypt(byte[] cText, SecretKey key) throws Exception {
+        public static byte[] decrypt(byte[] cText, byte[] aad, SecretKey key) throws Exception {
 
+            if (cText.length < NONCE_LEN + TAG_LEN) {
+                throw new AEADBadTagException("Truncated ciphertext");
+            }
             ByteBuffer bb = ByteBuffer.wrap(cText);
 
             // split cText to get the appended nonce
@@ -99,6 +158,7 @@ public record AuthorizationCode(String tenantName, String identityUsername,
             IvParameterSpec iv = new IvParameterSpec(nonce);
 
             cipher.init(Cipher.DECRYPT_MODE, key, iv);
+            cipher.updateAAD(aad);
 
             // decrypted text
             byte[] output = cipher.doFinal(encryptedText);
@@ -0,0 +1,168 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJBException;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * Seals and opens authorization codes with a ring of keys shared by every node, so that a code minted
+ * on one node is redeemed on any other.
+ * <p>
+ * The keys live in the file {@code authorization.code.key.store}, which has to be on storage shared by
+ * the nodes and has no default: deployment fails when it is not set. Each key seals codes for {@code authorization.code.key.lifetime} seconds. It stays known
+ * until the codes it sealed have all expired, {@code authorization.code.horizon} seconds later, and
+ * is then retired. Every {@code authorization.code.key.rotation.interval} seconds, each node takes the
+ * store's lock and adds a successor once the sealing key has less than two intervals left. It then
+ * reloads the ring. A successor is thus known to every node before it seals anything. A code
+ * naming an unknown kid triggers an early reload, at most once per second.
+ * <p>
+ * Concurrency is bean-managed as for {@link JwtManager}: the ring is swapped atomically and only
+ * rotations are serialized.
+ */
+@Startup
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class AuthorizationCodeKeys {
+    private final Config config = ConfigProvider.getConfig();
+    private final long keyLifetime = config.getOptionalValue("authorization.code.key.lifetime",Long.class).orElse(3600L);
+    private final long rotationInterval = config.getOptionalValue("authorization.code.key.rotation.interval",Long.class).orElse(300L);
+    private final long horizon = config.getOptionalValue("authorization.code.horizon",Long.class).orElse(300L);
+    private CodeKeyStore store = config.getOptionalValue("authorization.code.key.store",String.class)
+            .map(location -> new CodeKeyStore(Path.of(location))).orElse(null);
+    private final AtomicReference<CodeKeyRing> keyRing = new AtomicReference<>(CodeKeyRing.EMPTY);
+    private final Object rotationLock = new Object();
+    private volatile long lastReload;
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private EpochClock clock = EpochClock.system();
+
+    @Resource
+    private TimerService timerService;
+
+    public AuthorizationCodeKeys(){
+    }
+
+    AuthorizationCodeKeys(Path store,EpochClock clock,Logger logger){
+        this.store = new CodeKeyStore(store);
+        this.clock = clock;
+        this.logger = logger;
+    }
+
+    @PostConstruct
+    public void start(){
+        if(store == null){
+            // a node-local default would have every node seal codes no other node can open
+            throw new IllegalStateException("authorization.code.key.store must name a file on storage shared by every node");
+        }
+        rotate();
+        timerService.createIntervalTimer(rotationInterval*1000L,rotationInterval*1000L,
+                new TimerConfig("authorization-code-key-rotation",false));
+    }
+
+    /**
+     * Adds the successors and retires the expired keys of the shared store, then loads it.
+     */
+    @Timeout
+    public void rotate(){
+        synchronized (rotationLock){
+            long now = clock.epochSecond();
+            try {
+                List<CodeKey> keys = store.update(stored -> rotate(stored,now));
+                keyRing.set(new CodeKeyRing(keys));
+                lastReload = now;
+            } catch (IOException | RuntimeException e) {
+                // the current ring keeps serving until the store is reachable again
+                logger.severe("Unable to rotate the authorization code keys of "+store.file()+": "+e);
+                if(keyRing.get().sealingKey(now) == null){
+                    throw new EJBException("No authorization code key available",e);
+                }
+            }
+        }
+    }
+
+    private List<CodeKey> rotate(List<CodeKey> stored,long now){
+        List<CodeKey> keys = new ArrayList<>(stored.size()+1);
+        long latest = now;
+        for(CodeKey key:stored){
+            if(key.retireAfter() >= now){
+                keys.add(key);
+                latest = Math.max(latest,key.notAfter());
+            }
+        }
+        boolean changed = keys.size() != stored.size();
+        while (latest < now+2L*rotationInterval || keys.isEmpty()){
+            latest = Math.max(latest,now)+keyLifetime;
+            keys.add(CodeKey.generate(latest,latest+horizon));
+            changed = true;
+        }
+        return changed ? keys : stored;
+    }
+
+    /**
+     * @return the code to hand to the client, sealed with the current key
+     */
+    public String seal(AuthorizationCode authorizationCode,String codeChallenge){
+        CodeKey key = keyRing.get().sealingKey(clock.epochSecond());
+        if(key == null){
+            rotate();
+            key = keyRing.get().sealingKey(clock.epochSecond());
+        }
+        try {
+            return authorizationCode.getCode(key,codeChallenge);
+        } catch (Exception e) {
+            throw new EJBException(e);
+        }
+    }
+
+    /**
+     * @return the code, or null when it was not sealed by a known key, was tampered with or does not
+     * match the verifier
+     */
+    public AuthorizationCode open(String authorizationCode,String codeVerifier) throws Exception {
+        CodeKeyRing ring = keyRing.get();
+        String kid = AuthorizationCode.kid(authorizationCode);
+        if(kid != null && ring.find(kid) == null && reloadAllowed()){
+            ring = reload();
+        }
+        return AuthorizationCode.decode(authorizationCode,codeVerifier,ring);
+    }
+
+    private boolean reloadAllowed(){
+        return clock.epochSecond() > lastReload;
+    }
+
+    private CodeKeyRing reload(){
+        lastReload = clock.epochSecond();
+        try {
+            CodeKeyRing ring = new CodeKeyRing(store.load());
+            if(!ring.keys().isEmpty()){
+                keyRing.set(ring);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Unable to reload the authorization code keys of "+store.file()+": "+e);
+        }
+        return keyRing.get();
+    }
+}
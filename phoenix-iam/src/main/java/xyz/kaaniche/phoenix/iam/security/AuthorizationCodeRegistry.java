@@ -0,0 +1,141 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Remembers the authorization codes already redeemed until they expire, so that each code is
+ * exchanged for tokens at most once.
+ * <p>
+ * Redeemed code ids are kept in a concurrent set, making a replay check a single insertion. Each id
+ * is also appended to the bucket of a hashed timing wheel of one second slots, the one of the second
+ * following its expiry; expired codes being refused anyway, they are forgotten once the wheel passes
+ * their bucket, and the wheel only ever visits buckets whose codes are due. It is advanced by the
+ * redemptions themselves, by whichever finds it behind the clock. Codes expiring beyond
+ * {@code authorization.code.horizon} seconds, more than a turn of the wheel, and any code once
+ * {@code authorization.code.registry.capacity} codes are remembered are refused: the registry fails
+ * closed rather than forget a code too early.
+ */
+@ApplicationScoped
+public class AuthorizationCodeRegistry {
+    private final Config config = ConfigProvider.getConfig();
+    private final long horizon = config.getOptionalValue("authorization.code.horizon",Long.class).orElse(300L);
+    private final int capacity = config.getOptionalValue("authorization.code.registry.capacity",Integer.class).orElse(1<<18);
+
+    private final Set<UUID> redeemed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int slots = Integer.highestOneBit((int) horizon+1)<<1;
+    private final List<Queue<UUID>> wheel = new ArrayList<>(slots);
+    private final ReentrantLock advancing = new ReentrantLock();
+    /** the next second whose bucket is to be cleared */
+    private volatile long cursor;
+
+    private final LongAdder redemptions = new LongAdder();
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+
+    @Inject
+    private EpochClock clock = EpochClock.system();
+
+    public AuthorizationCodeRegistry(){
+        for(int slot = 0; slot < slots; ++slot){
+            wheel.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    AuthorizationCodeRegistry(EpochClock clock){
+        this();
+        this.clock = clock;
+    }
+
+    /**
+     * Records the redemption of a code.
+     *
+     * @param codeId    the random id of the code, as returned by {@link AuthorizationCode#codeId(String)}
+     * @param expiresAt the expiry of the code, as an epoch second
+     * @return true for the first redemption of a code still valid, false for a replay, an expired or
+     * unknown code, or when the registry cannot remember one more code
+     */
+    public boolean redeem(UUID codeId,long expiresAt){
+        long now = clock.epochSecond();
+        advance(now);
+        if(codeId == null || expiresAt < now){
+            return false;
+        }
+        if(expiresAt-now > horizon){
+            refused.increment();
+            return false;
+        }
+        if(size.incrementAndGet() > capacity){
+            size.decrementAndGet();
+            refused.increment();
+            return false;
+        }
+        if(!redeemed.add(codeId)){
+            size.decrementAndGet();
+            replays.increment();
+            return false;
+        }
+        wheel.get(slot(expiresAt+1L)).add(codeId);
+        redemptions.increment();
+        return true;
+    }
+
+    private void advance(long now){
+        if(cursor > now || !advancing.tryLock()){
+            return;
+        }
+        try {
+            long from = cursor == 0L ? now : cursor;
+            // a whole turn covers every bucket, older ones holding nothing but expired codes
+            long to = Math.min(now,from+slots-1L);
+            for(long second = from; second <= to; ++second){
+                Queue<UUID> bucket = wheel.get(slot(second));
+                for(UUID codeId = bucket.poll(); codeId != null; codeId = bucket.poll()){
+                    if(redeemed.remove(codeId)){
+                        size.decrementAndGet();
+                    }
+                }
+            }
+            cursor = now+1L;
+        } finally {
+            advancing.unlock();
+        }
+    }
+
+    private int slot(long second){
+        return (int) (second&(slots-1));
+    }
+
+    /**
+     * @return the number of codes remembered
+     */
+    public int size(){
+        return size.get();
+    }
+
+    public long getRedemptionCount(){
+        return redemptions.sum();
+    }
+
+    public long getReplayCount(){
+        return replays.sum();
+    }
+
+    public long getRefusedCount(){
+        return refused.sum();
+    }
+}
@@ -0,0 +1,66 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import jakarta.annotation.security.DenyAll;
+import jakarta.annotation.security.PermitAll;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.DynamicFeature;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.FeatureContext;
+import jakarta.ws.rs.ext.Provider;
+
+import java.lang.reflect.Method;
+
+/**
+ * Resolves the access policy of every resource method once, at deployment, and binds an
+ * {@link AuthorizationFilter} to the methods which have one, so that no annotation is looked up
+ * while serving requests.
+ */
+@Provider
+public class AuthorizationFeature implements DynamicFeature {
+
+    @Override
+    public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+        AuthorizationFilter filter = resolve(resourceInfo.getResourceClass(), resourceInfo.getResourceMethod());
+        if (filter != null) {
+            context.register(filter, Priorities.AUTHORIZATION);
+        }
+    }
+
+    /**
+     * @return the filter enforcing the policy of the method, or null when it has none
+     */
+    static AuthorizationFilter resolve(Class<?> resourceClass, Method method) {
+        // @DenyAll on the method takes precedence over @RolesAllowed and @PermitAll
+        if (method.isAnnotationPresent(DenyAll.class)) {
+            return AuthorizationFilter.denyAll();
+        }
+
+        // @RolesAllowed on the method takes precedence over @PermitAll
+        RolesAllowed rolesAllowed = method.getAnnotation(RolesAllowed.class);
+        if (rolesAllowed != null) {
+            return AuthorizationFilter.rolesAllowed(rolesAllowed.value());
+        }
+
+        // @PermitAll on the method takes precedence over @RolesAllowed on the class
+        if (method.isAnnotationPresent(PermitAll.class)) {
+            return null;
+        }
+
+        // @PermitAll must not be attached to classes
+
+        // @RolesAllowed on the class takes precedence over @PermitAll on the class
+        rolesAllowed = resourceClass.getAnnotation(RolesAllowed.class);
+        if (rolesAllowed != null) {
+            return AuthorizationFilter.rolesAllowed(rolesAllowed.value());
+        }
+
+        // @DenyAll on the class
+        if (resourceClass.isAnnotationPresent(DenyAll.class)) {
+            return AuthorizationFilter.denyAll();
+        }
+
+        // Authorization is not required for non-annotated methods
+        return null;
+    }
+}
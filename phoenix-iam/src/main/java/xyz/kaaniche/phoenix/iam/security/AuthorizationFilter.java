@@ -1,79 +1,59 @@
 package xyz.kaaniche.phoenix.iam.security;
 
-import jakarta.annotation.Priority;
-import jakarta.annotation.security.DenyAll;
-import jakarta.annotation.security.PermitAll;
-import jakarta.annotation.security.RolesAllowed;
-import jakarta.ws.rs.Priorities;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.container.ContainerRequestFilter;
-import jakarta.ws.rs.container.ResourceInfo;
-import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.Response;
-import jakarta.ws.rs.ext.Provider;
 
-import java.lang.reflect.Method;
-
-@Provider
-@Priority(Priorities.AUTHORIZATION)
+/**
+ * Enforces the access policy {@link AuthorizationFeature} resolved for one resource method: either
+ * every request is refused, or the caller must hold one of the allowed roles.
+ */
 public class AuthorizationFilter implements ContainerRequestFilter {
-    @Context
-    private ResourceInfo resourceInfo;
-
-    @Override
-    public void filter(ContainerRequestContext requestContext) {
-        Method method = resourceInfo.getResourceMethod();
-
-        // @DenyAll on the method takes precedence over @RolesAllowed and @PermitAll
-        if (method.isAnnotationPresent(DenyAll.class)) {
-            refuseRequest();
-        }
-
-        // @RolesAllowed on the method takes precedence over @PermitAll
-        RolesAllowed rolesAllowed = method.getAnnotation(RolesAllowed.class);
-        if (rolesAllowed != null) {
-            performAuthorization(rolesAllowed.value(), requestContext);
-            return;
-        }
-
-        // @PermitAll on the method takes precedence over @RolesAllowed on the class
-        if (method.isAnnotationPresent(PermitAll.class)) {
-            // Do nothing
-            return;
-        }
+    private final boolean denyAll;
+    private final String[] rolesAllowed;
+    private final RoleRequirement requirement;
+
+    private AuthorizationFilter(boolean denyAll,String[] rolesAllowed){
+        this.denyAll = denyAll;
+        this.rolesAllowed = rolesAllowed;
+        this.requirement = RoleRequirement.anyOf(rolesAllowed);
+    }
 
-        // @PermitAll must not be attached to classes
+    static AuthorizationFilter denyAll(){
+        return new AuthorizationFilter(true,new String[0]);
+    }
 
-        // @RolesAllowed on the class takes precedence over @PermitAll on the class
-        rolesAllowed =
-                resourceInfo.getResourceClass().getAnnotation(RolesAllowed.class);
-        if (rolesAllowed != null) {
-            performAuthorization(rolesAllowed.value(), requestContext);
-            return;
-        }
+    static AuthorizationFilter rolesAllowed(String[] rolesAllowed){
+        return new AuthorizationFilter(false,rolesAllowed.clone());
+    }
 
-        // @DenyAll on the class
-        if (resourceInfo.getResourceClass().isAnnotationPresent(DenyAll.class)) {
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        if (denyAll) {
             refuseRequest();
         }
-
-        // Authorization is not required for non-annotated methods
+        performAuthorization(requestContext);
     }
 
     /**
      * Perform authorization based on roles.
      *
-     * @param rolesAllowed the allowed roles
      * @param requestContext the request context
      */
-    private void performAuthorization(String[] rolesAllowed,
-                                      ContainerRequestContext requestContext) {
+    private void performAuthorization(ContainerRequestContext requestContext) {
 
         if (rolesAllowed.length > 0 && !isAuthenticated(requestContext)) {
             refuseRequest();
         }
 
+        if (requestContext.getSecurityContext() instanceof PhoenixSecurityContext securityContext) {
+            if (securityContext.satisfies(requirement)) {
+                return;
+            }
+            refuseRequest();
+        }
+
         for (final String role : rolesAllowed) {
             if (requestContext.getSecurityContext().isUserInRole(role)) {
                 return;
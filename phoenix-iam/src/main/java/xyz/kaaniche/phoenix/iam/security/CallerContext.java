@@ -0,0 +1,29 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Who a request acts for, as established by {@link AuthenticationFilter} from the bearer token.
+ * Immutable, so that it may be handed as is to asynchronous stages and executor tasks; see
+ * {@link CallerContexts}.
+ *
+ * @param username the subject of the token, or null when anonymous
+ * @param roles    the role names of the token
+ * @param roleMask the same roles as encoded by {@link xyz.kaaniche.phoenix.iam.controllers.RoleCodec},
+ *                 or -1 when anonymous
+ * @param tenant   the tenant the token was issued to, or null when unknown
+ */
+public record CallerContext(String username, Set<String> roles, long roleMask, String tenant) {
+    public static final CallerContext ANONYMOUS = new CallerContext(null, Collections.emptySet(), -1L, null);
+
+    public static CallerContext of(VerifiedToken token) {
+        Object tenant = token.claims().getClaim("tenant_id");
+        return new CallerContext(token.claims().getSubject(), token.roles(), token.roleMask(),
+                tenant == null ? null : tenant.toString());
+    }
+
+    public boolean isAnonymous() {
+        return username == null;
+    }
+}
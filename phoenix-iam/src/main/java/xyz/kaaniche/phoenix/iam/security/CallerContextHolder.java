@@ -0,0 +1,22 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import jakarta.enterprise.context.RequestScoped;
+
+/**
+ * Holds the {@link CallerContext} of the current request. Being request scoped rather than thread
+ * bound, it is discarded with the request whichever thread served it, and never leaks to the next
+ * request a pooled or virtual thread picks up. Tasks leaving the request thread get their own request
+ * context holding a copy through {@link CallerContexts}.
+ */
+@RequestScoped
+public class CallerContextHolder {
+    private CallerContext callerContext = CallerContext.ANONYMOUS;
+
+    public CallerContext get() {
+        return callerContext;
+    }
+
+    public void set(CallerContext callerContext) {
+        this.callerContext = callerContext == null ? CallerContext.ANONYMOUS : callerContext;
+    }
+}
@@ -0,0 +1,83 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.ContextNotActiveException;
+import jakarta.enterprise.context.control.RequestContextController;
+import jakarta.enterprise.inject.Instance;
+import jakarta.inject.Inject;
+
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Carries the caller of the current request into work running on other threads.
+ * <p>
+ * The caller is captured when a task is wrapped, on the request thread, and the task then runs within
+ * a request context of its own, activated for its duration, whose {@link CallerContextHolder} holds
+ * that caller. Nothing is left behind on the executing thread, so that tasks may run on a managed
+ * executor as well as on virtual threads. A task which happens to run on a thread already within a
+ * request context, such as a stage completed inline, reuses it and gets its former caller back once
+ * done.
+ */
+@ApplicationScoped
+public class CallerContexts {
+    @Inject
+    private CallerContextHolder callerContextHolder;
+
+    @Inject
+    private Instance<RequestContextController> requestContextControllers;
+
+    /**
+     * @return the caller of the current request, or {@link CallerContext#ANONYMOUS} outside of any
+     * request
+     */
+    public CallerContext current() {
+        try {
+            return callerContextHolder.get();
+        } catch (ContextNotActiveException e) {
+            return CallerContext.ANONYMOUS;
+        }
+    }
+
+    public Runnable propagate(Runnable task) {
+        CallerContext caller = current();
+        return () -> runAs(caller, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public <T> Supplier<T> propagate(Supplier<T> task) {
+        CallerContext caller = current();
+        return () -> runAs(caller, task);
+    }
+
+    /**
+     * @return an executor running every task submitted from the current request as its caller, for
+     * {@link java.util.concurrent.CompletableFuture} stages
+     */
+    public Executor propagate(Executor executor) {
+        CallerContext caller = current();
+        return task -> executor.execute(() -> runAs(caller, () -> {
+            task.run();
+            return null;
+        }));
+    }
+
+    private <T> T runAs(CallerContext caller, Supplier<T> task) {
+        RequestContextController controller = requestContextControllers.get();
+        boolean activated = controller.activate();
+        CallerContext previous = activated ? null : callerContextHolder.get();
+        try {
+            callerContextHolder.set(caller);
+            return task.get();
+        } finally {
+            if (activated) {
+                controller.deactivate();
+            } else {
+                callerContextHolder.set(previous);
+            }
+            requestContextControllers.destroy(controller);
+        }
+    }
+}
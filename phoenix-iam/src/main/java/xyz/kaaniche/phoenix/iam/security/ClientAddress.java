@@ -0,0 +1,54 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.servlet.http.HttpServletRequest;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Resolves the address of the client behind a request, as keyed by {@link LoginThrottle}.
+ * <p>
+ * Behind a load balancer the peer address is the balancer's, shared by every client. When the peer is
+ * one of the {@code login.throttle.trusted.proxies}, the client is the right-most address of the
+ * {@code X-Forwarded-For} header that is not itself a trusted proxy. The header is ignored when the
+ * peer is not trusted, as anybody can send it.
+ */
+@ApplicationScoped
+public class ClientAddress {
+    private static final String FORWARDED_FOR = "X-Forwarded-For";
+
+    private final Set<String> trustedProxies;
+
+    public ClientAddress(){
+        this(ConfigProvider.getConfig().getOptionalValues("login.throttle.trusted.proxies",String.class)
+                .orElse(List.of()));
+    }
+
+    ClientAddress(List<String> trustedProxies){
+        this.trustedProxies = Set.copyOf(trustedProxies.stream().map(String::trim).filter(p -> !p.isEmpty()).toList());
+    }
+
+    public String of(HttpServletRequest request){
+        return of(request.getRemoteAddr(),request.getHeader(FORWARDED_FOR));
+    }
+
+    /**
+     * @param peer         the address the request came from
+     * @param forwardedFor the {@code X-Forwarded-For} header, or null
+     */
+    String of(String peer,String forwardedFor){
+        if(peer == null || forwardedFor == null || !trustedProxies.contains(peer)){
+            return peer;
+        }
+        String[] hops = forwardedFor.split(",");
+        for(int hop = hops.length-1; hop >= 0; --hop){
+            String address = hops[hop].trim();
+            if(!address.isEmpty() && !trustedProxies.contains(address)){
+                return address;
+            }
+        }
+        return peer;
+    }
+}
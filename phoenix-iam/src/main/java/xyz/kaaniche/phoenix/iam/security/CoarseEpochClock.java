@@ -0,0 +1,42 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link EpochClock} whose value is refreshed by a background tick on the container's managed
+ * scheduled executor, so reading it is a single volatile read. Expiries are checked to the second, a
+ * tick lagging by a fraction of it is harmless.
+ */
+@ApplicationScoped
+public class CoarseEpochClock implements EpochClock {
+    private static final long TICK_MILLIS = 100L;
+
+    private volatile long epochSecond = System.currentTimeMillis() / 1000L;
+    private ScheduledFuture<?> tick;
+
+    @Resource
+    private ManagedScheduledExecutorService managedScheduledExecutorService;
+
+    @PostConstruct
+    public void start() {
+        tick = managedScheduledExecutorService.scheduleAtFixedRate(() -> epochSecond = System.currentTimeMillis() / 1000L,
+                TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        tick.cancel(false);
+    }
+
+    @Override
+    public long epochSecond() {
+        return epochSecond;
+    }
+}
@@ -0,0 +1,33 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * An entry of the {@link CodeKeyRing}: a ChaCha20-Poly1305 key sealing authorization codes.
+ *
+ * @param kid         the id embedded in the codes sealed with this key
+ * @param key         the 256-bit secret key
+ * @param notAfter    epoch second after which the key no longer seals new codes
+ * @param retireAfter epoch second after which codes sealed by the key can no longer be valid
+ */
+public record CodeKey(String kid, SecretKey key, long notAfter, long retireAfter) {
+    private static final SecureRandom random = new SecureRandom();
+
+    /**
+     * @return a new key with a random kid
+     */
+    public static CodeKey generate(long notAfter, long retireAfter) {
+        byte[] kid = new byte[6];
+        random.nextBytes(kid);
+        try {
+            return new CodeKey(Base64.getUrlEncoder().withoutPadding().encodeToString(kid),
+                    KeyGenerator.getInstance("CHACHA20").generateKey(), notAfter, retireAfter);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable snapshot of the keys sealing authorization codes, indexed by kid. As for the signing
+ * {@link KeyRing}, a new ring is built whenever keys are added or retired and published atomically.
+ */
+public final class CodeKeyRing {
+    static final CodeKeyRing EMPTY = new CodeKeyRing(List.of());
+
+    private final Map<String,CodeKey> keys;
+    private final CodeKey[] sealingOrder;
+
+    public CodeKeyRing(Collection<CodeKey> keys) {
+        this.keys = Map.copyOf(keys.stream().collect(Collectors.toMap(CodeKey::kid, Function.identity())));
+        this.sealingOrder = keys.stream().sorted(Comparator.comparingLong(CodeKey::notAfter))
+                .toArray(CodeKey[]::new);
+    }
+
+    /**
+     * The valid key closest to its expiration seals, its successors being known to every node before
+     * their turn comes.
+     *
+     * @return the key to seal new codes with, or null when no key of the ring can seal anymore
+     */
+    public CodeKey sealingKey(long currentUTCSeconds) {
+        for (CodeKey key : sealingOrder) {
+            if (currentUTCSeconds <= key.notAfter()) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the key of the given kid, or null when the kid is unknown or has been retired
+     */
+    public CodeKey find(String kid) {
+        return kid == null ? null : keys.get(kid);
+    }
+
+    Collection<CodeKey> keys() {
+        return keys.values();
+    }
+}
@@ -0,0 +1,107 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps the {@link CodeKey}s in a properties file shared by every node, one
+ * {@code kid=notAfter:retireAfter:key} line per key. The file is only ever replaced by an atomic
+ * rename, so nodes read it without locking; updates are serialized across nodes by an exclusive lock
+ * on a {@code .lock} file next to it. Both files are readable by their owner only.
+ */
+final class CodeKeyStore {
+    private final Path file;
+    private final Path lockFile;
+
+    CodeKeyStore(Path file) {
+        this.file = file.toAbsolutePath();
+        this.lockFile = this.file.resolveSibling(this.file.getFileName() + ".lock");
+    }
+
+    Path file() {
+        return file;
+    }
+
+    /**
+     * @return the keys of the store, none when it does not exist yet
+     */
+    List<CodeKey> load() throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (NoSuchFileException e) {
+            return List.of();
+        }
+        List<CodeKey> keys = new ArrayList<>(properties.size());
+        for (String kid : properties.stringPropertyNames()) {
+            String[] fields = properties.getProperty(kid).split(":");
+            keys.add(new CodeKey(kid, new SecretKeySpec(Base64.getDecoder().decode(fields[2]), "ChaCha20"),
+                    Long.parseLong(fields[0]), Long.parseLong(fields[1])));
+        }
+        return keys;
+    }
+
+    /**
+     * Reads, changes and writes the keys back while holding the lock of the store.
+     *
+     * @param update given the stored keys, returns the keys to store, or the same list when unchanged
+     * @return the keys now stored
+     */
+    List<CodeKey> update(UnaryOperator<List<CodeKey>> update) throws IOException {
+        Files.createDirectories(file.getParent());
+        createPrivate(lockFile);
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            List<CodeKey> stored = load();
+            List<CodeKey> updated = update.apply(stored);
+            if (updated != stored) {
+                store(updated);
+            }
+            return updated;
+        }
+    }
+
+    private void store(List<CodeKey> keys) throws IOException {
+        Properties properties = new Properties();
+        for (CodeKey key : keys) {
+            properties.setProperty(key.kid(), key.notAfter() + ":" + key.retireAfter() + ":"
+                    + Base64.getEncoder().encodeToString(key.key().getEncoded()));
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(temporary);
+        createPrivate(temporary);
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            properties.store(writer, "Phoenix IAM authorization code keys");
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void createPrivate(Path path) throws IOException {
+        try {
+            if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+                Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            } else {
+                Files.createFile(path);
+            }
+        } catch (FileAlreadyExistsException e) {
+            // created by another node or an earlier run
+        }
+    }
+}
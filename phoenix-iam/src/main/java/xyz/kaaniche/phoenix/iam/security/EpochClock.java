@@ -0,0 +1,20 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+/**
+ * The source of the current time for every expiry check of the IAM. In the container this is
+ * {@link CoarseEpochClock}; tests can provide a fixed or a manually advanced clock instead.
+ */
+@FunctionalInterface
+public interface EpochClock {
+    /**
+     * @return the number of seconds elapsed since 1970-01-01T00:00:00Z
+     */
+    long epochSecond();
+
+    /**
+     * @return a clock reading the system time on every call
+     */
+    static EpochClock system() {
+        return () -> System.currentTimeMillis() / 1000L;
+    }
+}
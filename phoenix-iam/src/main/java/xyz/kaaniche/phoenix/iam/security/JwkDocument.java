@@ -0,0 +1,25 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import com.nimbusds.jose.util.Base64URL;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A JSON Web Key document rendered once and served as is.
+ *
+ * @param content the UTF-8 encoded JSON, which must not be modified
+ * @param etag    the value of a strong entity tag, derived from the content digest
+ */
+public record JwkDocument(byte[] content, String etag) {
+    static JwkDocument of(String json) {
+        byte[] content = json.getBytes(StandardCharsets.UTF_8);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            return new JwkDocument(content, Base64URL.encode(digest).toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,163 +1,354 @@
 package xyz.kaaniche.phoenix.iam.security;
 
 import com.nimbusds.jose.*;
-import com.nimbusds.jose.crypto.Ed25519Signer;
-import com.nimbusds.jose.crypto.Ed25519Verifier;
 import com.nimbusds.jose.jwk.Curve;
 import com.nimbusds.jose.jwk.KeyUse;
 import com.nimbusds.jose.jwk.OctetKeyPair;
 import com.nimbusds.jose.jwk.gen.OctetKeyPairGenerator;
 import com.nimbusds.jwt.JWT;
 import com.nimbusds.jwt.JWTClaimsSet;
-import com.nimbusds.jwt.JWTParser;
 import com.nimbusds.jwt.SignedJWT;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
 import jakarta.ejb.EJBException;
 import jakarta.ejb.LocalBean;
 import jakarta.ejb.Singleton;
 import jakarta.ejb.Startup;
+import jakarta.inject.Inject;
 import org.eclipse.microprofile.config.Config;
 import org.eclipse.microprofile.config.ConfigProvider;
+import xyz.kaaniche.phoenix.iam.controllers.RoleCodec;
+
+import java.nio.ByteBuffer;
 import java.text.ParseException;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.ZoneOffset;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.IntStream;
 
+/**
+ * Issues and verifies Ed25519 signed JWTs.
+ * <p>
+ * Concurrency is bean-managed: the signing keys live in an immutable {@link KeyRing}
+ * swapped atomically, so issuance and verification never block each other.
+ * Only building a new ring is serialized, and {@link KeyRotationScheduler} does it off the
+ * request path.
+ */
 @Startup
 @Singleton
 @LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
 public class  JwtManager {
     private final Config config = ConfigProvider.getConfig();
-    private final Map<String,Long> keyPairExpirationTimes = new HashMap<>();
-    private final Set<OctetKeyPair> cachedKeyPairs = new HashSet<>();
+    private final AtomicReference<KeyRing> keyRing = new AtomicReference<>(KeyRing.EMPTY);
+    private final Object rotationLock = new Object();
     private final Long keyPairLifetimeDuration = config.getValue("key.pair.lifetime.duration",Long.class);
     private final Short keyPairCacheSize = config.getValue("key.pair.cache.size",Short.class);
     private final Integer jwtLifetimeDuration = config.getValue("jwt.lifetime.duration",Integer.class);
+    private final Long keyRotationInterval = config.getValue("key.pair.rotation.interval",Long.class);
     private final String issuer = config.getValue("jwt.issuer",String.class);
     private final List<String> audiences = config.getValues("jwt.audiences",String.class);
     private final String claimRoles = config.getValue("jwt.claim.roles",String.class);
+    private final Integer verifiedTokenCacheSize = config.getOptionalValue("jwt.verified.cache.size",Integer.class).orElse(0);
+    private VerifiedTokenCache verifiedTokenCache;
+    private final Integer batchParallelism = config.getOptionalValue("jwt.batch.parallelism",Integer.class)
+            .orElse(Runtime.getRuntime().availableProcessors());
+    private AccessTokenWriter accessTokenWriter;
+    private ForkJoinPool batchPool;
     private final OctetKeyPairGenerator keyPairGenerator = new OctetKeyPairGenerator(Curve.Ed25519);
+    @Inject
+    private EpochClock clock = EpochClock.system();
+
+    public JwtManager(){
+    }
+
+    JwtManager(EpochClock clock){
+        this.clock = clock;
+    }
 
     @PostConstruct
     public void start(){
-        while (cachedKeyPairs.size()<keyPairCacheSize){
-            cachedKeyPairs.add(generateKeyPair());
+        if(keyPairLifetimeDuration <= 2*keyRotationInterval){
+            throw new IllegalStateException("key.pair.lifetime.duration ("+keyPairLifetimeDuration
+                    +") must exceed twice key.pair.rotation.interval ("+keyRotationInterval
+                    +"), or no key would ever sign until the next rotation");
+        }
+        accessTokenWriter = new AccessTokenWriter(accessTokenClaims("tenant","subject","scope",
+                new String[]{"role"},"jti",0L),claimRoles,jwtLifetimeDuration);
+        if(verifiedTokenCacheSize>0){
+            verifiedTokenCache = new VerifiedTokenCache(verifiedTokenCacheSize);
         }
+        batchPool = new ForkJoinPool(batchParallelism);
+        rotate();
+    }
+
+    @PreDestroy
+    public void stop(){
+        batchPool.shutdownNow();
     }
 
     public String generateAccessToken(String tenantId, String subject, String approvedScopes, String[] roles){
+        return generateAccessToken(getSigningKey(),tenantId,subject,approvedScopes,roles);
+    }
+
+    /**
+     * Issues a batch of access tokens in parallel, on a fork-join pool bounded by
+     * {@code jwt.batch.parallelism}. Every token of the batch is signed by the same key.
+     *
+     * @param requests the tokens to issue
+     * @param onIssued called with each token and the index of its request, as soon as it is signed
+     *                 and from any of the pool threads
+     * @return completes once every token has been issued, or exceptionally on the first failure
+     */
+    public CompletableFuture<Void> generateAccessTokens(List<AccessTokenRequest> requests, ObjIntConsumer<String> onIssued){
+        SigningKey signingKey = getSigningKey();
+        return CompletableFuture.runAsync(() -> IntStream.range(0,requests.size()).parallel().forEach(i -> {
+            AccessTokenRequest request = requests.get(i);
+            onIssued.accept(generateAccessToken(signingKey,request.tenantId(),request.subject(),
+                    request.approvedScopes(),request.roles()),i);
+        }),batchPool);
+    }
+
+    private String generateAccessToken(SigningKey signingKey, String tenantId, String subject, String approvedScopes, String[] roles){
         try {
-            OctetKeyPair octetKeyPair = getKeyPair()
-                    .orElseThrow(()->new EJBException("Unable to retrieve a valid Ed25519 KeyPair"));
-            JWSSigner signer = new Ed25519Signer(octetKeyPair);
-            JWSHeader header = new JWSHeader.Builder(JWSAlgorithm.EdDSA)
-                    .keyID(octetKeyPair.getKeyID())
-                    .type(JOSEObjectType.JWT)
-                    .build();
-            Instant now = Instant.now();
-            JWTClaimsSet claimsSet = new JWTClaimsSet.Builder()
-                    .issuer(issuer)
-                    .audience(audiences)
-                    .subject(subject)
-                    .claim("upn",subject)
-                    .claim("tenant_id",tenantId)
-                    .claim("scope", approvedScopes)
-                    .claim(claimRoles, roles)
-                    .jwtID(UUID.randomUUID().toString())
-                    .issueTime(Date.from(now))
-                    .notBeforeTime(Date.from(now))
-                    .expirationTime(Date.from(now.plus(jwtLifetimeDuration, ChronoUnit.SECONDS)))
-                    .build();
-            SignedJWT signedJWT = new SignedJWT(header,claimsSet);
-            signedJWT.sign(signer);
-            return signedJWT.serialize();
+            UUID jti = UUID.randomUUID();
+            long now = clock.epochSecond();
+            String token = accessTokenWriter.write(signingKey,tenantId,subject,approvedScopes,roles,jti,now);
+            if(token != null){
+                return token;
+            }
+            return signAccessToken(signingKey,tenantId,subject,approvedScopes,roles,jti.toString(),now);
         } catch (JOSEException e) {
             throw new EJBException(e);
         }
     }
-    public String generateRefreshToken(String clientId, String subject, String approvedScope) throws Exception {
-        OctetKeyPair octetKeyPair = getKeyPair()
-                .orElseThrow(()->new EJBException("Unable to retrieve a valid Ed25519 KeyPair"));
-        JWSSigner signer = new Ed25519Signer(octetKeyPair);
-        JWSHeader header = new JWSHeader.Builder(JWSAlgorithm.EdDSA)
-                .keyID(octetKeyPair.getKeyID())
-                .type(JOSEObjectType.JWT)
+
+    /**
+     * Signs an access token through the Nimbus builders, for the values {@link AccessTokenWriter}
+     * leaves to Nimbus.
+     */
+    String signAccessToken(SigningKey signingKey, String tenantId, String subject, String approvedScopes,
+                           String[] roles, String jti, long issuedAt) throws JOSEException {
+        SignedJWT signedJWT = new SignedJWT(signingKey.header(),
+                accessTokenClaims(tenantId,subject,approvedScopes,roles,jti,issuedAt));
+        signedJWT.sign(signingKey.signer());
+        return signedJWT.serialize();
+    }
+
+    private JWTClaimsSet accessTokenClaims(String tenantId, String subject, String approvedScopes, String[] roles,
+                                           String jti, long issuedAt){
+        Date now = new Date(issuedAt*1000L);
+        return new JWTClaimsSet.Builder()
+                .issuer(issuer)
+                .audience(audiences)
+                .subject(subject)
+                .claim("upn",subject)
+                .claim("tenant_id",tenantId)
+                .claim("scope", approvedScopes)
+                .claim(claimRoles, roles)
+                .jwtID(jti)
+                .issueTime(now)
+                .notBeforeTime(now)
+                .expirationTime(new Date((issuedAt+jwtLifetimeDuration)*1000L))
                 .build();
-        Instant now = Instant.now();
+    }
+
+    public String generateRefreshToken(String clientId, String subject, String approvedScope) throws Exception {
+        SigningKey signingKey = getSigningKey();
+        long now = clock.epochSecond();
         //6.Build refresh token
         JWTClaimsSet refreshTokenClaims = new JWTClaimsSet.Builder()
                 .subject(subject)
                 .claim("tenant_id", clientId)
                 .claim("scope", approvedScope)
                 //refresh token for 3 hours.
-                .expirationTime(Date.from(now.plus(3, ChronoUnit.HOURS)))
+                .expirationTime(new Date((now+3*3600L)*1000L))
                 .build();
-        SignedJWT signedRefreshToken = new SignedJWT(header,refreshTokenClaims);
-        signedRefreshToken.sign(signer);
+        SignedJWT signedRefreshToken = new SignedJWT(signingKey.header(),refreshTokenClaims);
+        signedRefreshToken.sign(signingKey.signer());
         return signedRefreshToken.serialize();
     }
 
     public Optional<JWT> validateJWT(String token){
+        return Optional.ofNullable(verifySignature(token));
+    }
+
+    /**
+     * Validates an access token like {@link #validateJWT(String)}, answering from the verified
+     * token cache when {@code jwt.verified.cache.size} is set. The cache is opt-in: it is disabled
+     * when the size is unset or 0, every token then having its signature verified.
+     *
+     * @return the verified token, or empty when its signature is invalid or it has expired
+     */
+    public Optional<VerifiedToken> verify(String token){
+        VerifiedTokenCache cache = verifiedTokenCache;
+        if(cache == null){
+            return Optional.ofNullable(verifySignature(token)).map(this::toVerifiedToken);
+        }
+        ByteBuffer key = VerifiedTokenCache.key(token);
+        VerifiedToken verified = cache.get(key);
+        if(verified == null){
+            SignedJWT parsed = verifySignature(token);
+            if(parsed == null){
+                return Optional.empty();
+            }
+            verified = toVerifiedToken(parsed);
+            cache.put(key,verified);
+        }else if(verified.expiresAt() < clock.epochSecond()){
+            cache.invalidate(key);
+            return Optional.empty();
+        }
+        return Optional.of(verified);
+    }
+
+    /**
+     * @return the verified token cache, empty when {@code jwt.verified.cache.size} is not set
+     */
+    public Optional<VerifiedTokenCache> getVerifiedTokenCache(){
+        return Optional.ofNullable(verifiedTokenCache);
+    }
+
+    private SignedJWT verifySignature(String token){
         try {
             SignedJWT parsed = SignedJWT.parse(token);
-            OctetKeyPair publicKey = cachedKeyPairs.stream()
-                    .filter(kp -> kp.getKeyID().equals(parsed.getHeader().getKeyID()))
-                    .findFirst()
-                    .orElseThrow(()->new EJBException("Unable to retrieve the key pair associated with the kid"))
-                    .toPublicJWK();
-            JWSVerifier verifier = new Ed25519Verifier(publicKey);
-            if(parsed.verify(verifier)){
-                if(parsed.getJWTClaimsSet().getExpirationTime().toInstant().isBefore(Instant.now())){
-                    return Optional.empty();
+            if(parsed.verify(findKey(parsed.getHeader().getKeyID()).verifier())){
+                //the claims set is parsed once here and kept by the returned SignedJWT
+                if(parsed.getJWTClaimsSet().getExpirationTime().getTime()/1000L < clock.epochSecond()){
+                    return null;
                 }
-                return Optional.of(JWTParser.parse(token));
+                return parsed;
             }
-            return Optional.empty();
+            return null;
         } catch (ParseException | JOSEException e) {
             throw new EJBException(e);
         }
     }
 
+    private VerifiedToken toVerifiedToken(SignedJWT jwt){
+        try {
+            JWTClaimsSet claims = jwt.getJWTClaimsSet();
+            String[] names = claims.getStringArrayClaim(claimRoles);
+            Set<String> roles = names == null ? Set.of() : Set.copyOf(Arrays.asList(names));
+            return new VerifiedToken(jwt.getHeader().getKeyID(),claims,roles,RoleCodec.encode(roles),
+                    claims.getExpirationTime().getTime()/1000L);
+        } catch (ParseException e) {
+            throw new EJBException(e);
+        }
+    }
+
     public OctetKeyPair getPublicValidationKey(String kid){
-        return cachedKeyPairs.stream()
-                .filter(kp -> kp.getKeyID().equals(kid))
-                .findFirst()
-                .orElseThrow(()->new EJBException("Unable to retrieve the key pair associated with the kid"))
-                .toPublicJWK();
+        return findKey(kid).publicKey();
+    }
+
+    /**
+     * @return the JWK set document of every public key currently accepted for verification
+     */
+    public JwkDocument getPublicValidationKeySet(){
+        return keyRing.get().publicKeySet();
     }
 
-    private OctetKeyPair generateKeyPair(){
+    /**
+     * @return the JWK document of the given kid, empty when the kid is unknown or retired
+     */
+    public Optional<JwkDocument> getPublicValidationKeyDocument(String kid){
+        return Optional.ofNullable(keyRing.get().publicKey(kid));
+    }
+
+    private SigningKey findKey(String kid){
+        SigningKey key = keyRing.get().find(kid);
+        if(key == null){
+            throw new EJBException("Unable to retrieve the key pair associated with the kid");
+        }
+        return key;
+    }
+
+    private SigningKey generateKeyPair(long currentUTCSeconds){
         //Generate a key pair with Ed25519 curve
         try {
-            Long currentUTCSeconds = LocalDateTime.now(ZoneId.of("UTC")).toEpochSecond(ZoneOffset.UTC);
             String kid = UUID.randomUUID().toString();
-            keyPairExpirationTimes.put(kid,currentUTCSeconds+keyPairLifetimeDuration);
-            return keyPairGenerator.keyUse(KeyUse.SIGNATURE)
+            OctetKeyPair keyPair = keyPairGenerator.keyUse(KeyUse.SIGNATURE)
                     .keyID(kid).generate();
+            long notAfter = currentUTCSeconds+keyPairLifetimeDuration;
+            return SigningKey.of(keyPair,notAfter,notAfter+jwtLifetimeDuration);
         } catch (JOSEException e) {
             throw new EJBException(e);
         }
     }
 
-    private boolean hasNotExpired(OctetKeyPair keyPair){
-        long currentUTCSeconds = LocalDateTime.now(ZoneId.of("UTC")).toEpochSecond(ZoneOffset.UTC);
-        return currentUTCSeconds <= keyPairExpirationTimes.get(keyPair.getKeyID());
+    private static boolean hasNotExpired(SigningKey key,long currentUTCSeconds){
+        return currentUTCSeconds <= key.notAfter();
+    }
+
+    private static boolean isPublicKeyExpired(SigningKey key,long currentUTCSeconds){
+        return currentUTCSeconds > key.retireAfter();
     }
 
-    private boolean isPublicKeyExpired(OctetKeyPair keyPair){
-        long currentUTCSeconds = LocalDateTime.now(ZoneId.of("UTC")).toEpochSecond(ZoneOffset.UTC);
-        return currentUTCSeconds > (keyPairExpirationTimes.get(keyPair.getKeyID())+jwtLifetimeDuration);
+    SigningKey getSigningKey(){
+        SigningKey signingKey = keyRing.get().signingKey(clock.epochSecond());
+        if(signingKey != null){
+            return signingKey;
+        }
+        //the scheduler fell behind: rotate inline rather than fail
+        synchronized (rotationLock){
+            signingKey = keyRing.get().signingKey(clock.epochSecond());
+            if(signingKey != null){
+                return signingKey;
+            }
+            rotate();
+            return Optional.ofNullable(keyRing.get().signingKey(clock.epochSecond()))
+                    .orElseThrow(()->new EJBException("Unable to retrieve a valid Ed25519 KeyPair"));
+        }
     }
 
-    private Optional<OctetKeyPair> getKeyPair(){
-        cachedKeyPairs.removeIf(this::isPublicKeyExpired);
-        while(cachedKeyPairs.stream().filter(this::hasNotExpired).count()<keyPairCacheSize) {
-            cachedKeyPairs.add(generateKeyPair());
+    /**
+     * Builds and publishes a new key ring. Keys whose tokens have all expired are retired, and
+     * fresh keys are generated until {@code key.pair.cache.size} keys remain able to sign for two
+     * more rotations. A successor is thus published at least one rotation interval, the JWK set
+     * max-age, before it signs its first token.
+     *
+     * @return the kids generated and retired, empty when the ring was left untouched
+     */
+    public KeyRotationEvent rotate(){
+        synchronized (rotationLock){
+            long now = clock.epochSecond();
+            long horizon = now+2*keyRotationInterval;
+            Set<String> retired = new HashSet<>();
+            Set<String> generated = new HashSet<>();
+            List<SigningKey> keys = new ArrayList<>();
+            for(SigningKey key:keyRing.get().keys()){
+                if(isPublicKeyExpired(key,now)){
+                    retired.add(key.kid());
+                }else {
+                    keys.add(key);
+                }
+            }
+            // bounded, a new key only counting when it outlives the horizon
+            while(generated.size()<keyPairCacheSize
+                    && keys.stream().filter(k -> hasNotExpired(k,horizon)).count()<keyPairCacheSize){
+                SigningKey key = generateKeyPair(now);
+                generated.add(key.kid());
+                keys.add(key);
+            }
+            KeyRotationEvent event = new KeyRotationEvent(Set.copyOf(generated),Set.copyOf(retired));
+            if(!event.isEmpty()){
+                keyRing.set(new KeyRing(keys));
+            }
+            if(verifiedTokenCache != null){
+                verifiedTokenCache.invalidateKeys(event.retired());
+            }
+            return event;
         }
-        return cachedKeyPairs.stream().filter(this::hasNotExpired).findAny();
+    }
+
+    /**
+     * @return the delay in seconds between two key rotations
+     */
+    public long getKeyRotationInterval() {
+        return keyRotationInterval;
     }
 
     public String getClaimRoles() {
@@ -0,0 +1,77 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable snapshot of the Ed25519 keys held by {@link JwtManager}, indexed by kid.
+ * A new ring is built whenever keys are added or retired and published atomically,
+ * so token issuance and verification read it without any locking. The JWK documents published
+ * for the ring are rendered once, when the ring is built.
+ */
+final class KeyRing {
+    static final KeyRing EMPTY = new KeyRing(java.util.List.of());
+
+    private final Map<String,SigningKey> keys;
+    private final SigningKey[] signingOrder;
+    private final Map<String,JwkDocument> publicKeys;
+    private final JwkDocument publicKeySet;
+
+    KeyRing(Collection<SigningKey> keys) {
+        this.keys = Map.copyOf(keys.stream().collect(Collectors.toMap(SigningKey::kid, Function.identity())));
+        this.signingOrder = keys.stream().sorted(Comparator.comparingLong(SigningKey::notAfter))
+                .toArray(SigningKey[]::new);
+        this.publicKeys = Map.copyOf(keys.stream().collect(Collectors.toMap(SigningKey::kid,
+                key -> JwkDocument.of(key.publicKey().toJSONString()))));
+        this.publicKeySet = JwkDocument.of(new JWKSet(keys.stream().sorted(Comparator.comparing(SigningKey::kid))
+                .<JWK>map(SigningKey::publicKey).toList()).toString());
+    }
+
+    /**
+     * Keys are used one after the other: the valid key closest to its expiration signs,
+     * the others wait their turn while already being published for verification.
+     *
+     * @param currentUTCSeconds the current epoch second
+     * @return the key to sign new tokens with, or null when no key of the ring can sign anymore
+     */
+    SigningKey signingKey(long currentUTCSeconds) {
+        for (SigningKey key : signingOrder) {
+            if (currentUTCSeconds <= key.notAfter()) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param kid the key id taken from a JWS header
+     * @return the matching key, or null when the kid is unknown or has been retired
+     */
+    SigningKey find(String kid) {
+        return kid == null ? null : keys.get(kid);
+    }
+
+    /**
+     * @return the public key of the given kid, or null when the kid is unknown or has been retired
+     */
+    JwkDocument publicKey(String kid) {
+        return kid == null ? null : publicKeys.get(kid);
+    }
+
+    /**
+     * @return the JWK set of all the public keys of the ring, including the ones not signing yet
+     */
+    JwkDocument publicKeySet() {
+        return publicKeySet;
+    }
+
+    Collection<SigningKey> keys() {
+        return keys.values();
+    }
+}
@@ -0,0 +1,15 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import java.util.Set;
+
+/**
+ * Fired by {@link KeyRotationScheduler} whenever the signing key ring changes.
+ *
+ * @param generated kids of the keys added to the ring
+ * @param retired   kids of the keys removed from the ring, tokens they signed can no longer be verified
+ */
+public record KeyRotationEvent(Set<String> generated, Set<String> retired) {
+    public boolean isEmpty() {
+        return generated.isEmpty() && retired.isEmpty();
+    }
+}
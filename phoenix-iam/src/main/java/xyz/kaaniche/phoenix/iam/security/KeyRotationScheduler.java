@@ -0,0 +1,52 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.DependsOn;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
+
+import java.util.logging.Logger;
+
+/**
+ * Keeps the {@link JwtManager} key ring ahead of time: every {@code key.pair.rotation.interval}
+ * seconds successors are generated for the keys about to stop signing and the keys whose tokens
+ * have all expired are retired, so token requests never pay for key generation.
+ */
+@Startup
+@Singleton
+@DependsOn("JwtManager")
+public class KeyRotationScheduler {
+    @Inject
+    private Logger logger;
+
+    @EJB
+    private JwtManager jwtManager;
+
+    @Inject
+    private Event<KeyRotationEvent> rotationEvent;
+
+    @Resource
+    private TimerService timerService;
+
+    @PostConstruct
+    public void start(){
+        long interval = jwtManager.getKeyRotationInterval()*1000L;
+        timerService.createIntervalTimer(interval,interval,new TimerConfig("key-rotation",false));
+    }
+
+    @Timeout
+    public void rotate(){
+        KeyRotationEvent event = jwtManager.rotate();
+        if(!event.isEmpty()){
+            logger.info("Key ring rotated, generated:"+event.generated()+" retired:"+event.retired());
+            rotationEvent.fire(event);
+        }
+    }
+}
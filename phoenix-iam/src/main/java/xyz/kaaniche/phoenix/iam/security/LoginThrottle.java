@@ -0,0 +1,188 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+import xyz.kaaniche.phoenix.iam.controllers.BoundedCache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts failed logins per username and per client address, and locks a source out once it exceeds
+ * its budget within a sliding window, so that credential stuffing is turned away before any
+ * database lookup or Argon2 computation.
+ * <p>
+ * Each source holds two longs updated by compare-and-set: the failure counts of the current and
+ * previous windows, and the lockout deadline with its level. The window estimate weights the previous
+ * window by the part of it still inside the sliding window. Once {@code login.throttle.max.failures}
+ * (per username) or {@code login.throttle.address.max.failures} (per address, 0 to disable) is reached
+ * within {@code login.throttle.window} seconds, the source is locked for {@code login.throttle.lockout}
+ * seconds, doubling on each relapse up to {@code login.throttle.max.lockout}.
+ * <p>
+ * Usernames are counted exactly, in a least-recently-used cache of {@code login.throttle.usernames}
+ * entries, so that failing against many usernames never locks out any other account. Addresses are
+ * hashed onto {@code login.throttle.stripes} stripes, two addresses sharing a stripe sharing their
+ * budget; {@link ClientAddress} tells clients apart behind a proxy.
+ */
+@ApplicationScoped
+public class LoginThrottle {
+    private static final int MAX_COUNT = 0xFFFF;
+    private static final int MAX_LEVEL = 30;
+
+    private final Config config = ConfigProvider.getConfig();
+    private final int stripes = Integer.highestOneBit(Math.max(1,
+            config.getOptionalValue("login.throttle.stripes",Integer.class).orElse(4096)));
+    private final long window = config.getOptionalValue("login.throttle.window",Long.class).orElse(60L);
+    private final int maxUsernameFailures = config.getOptionalValue("login.throttle.max.failures",Integer.class).orElse(5);
+    private final int maxAddressFailures = config.getOptionalValue("login.throttle.address.max.failures",Integer.class).orElse(20);
+    private final long lockout = config.getOptionalValue("login.throttle.lockout",Long.class).orElse(30L);
+    private final long maxLockout = config.getOptionalValue("login.throttle.max.lockout",Long.class).orElse(3600L);
+
+    private final BoundedCache<String,Source> usernames = new BoundedCache<>(
+            config.getOptionalValue("login.throttle.usernames",Integer.class).orElse(100_000));
+    private final Source[] addresses = new Source[stripes];
+
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder lockouts = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    @Inject
+    private EpochClock clock = EpochClock.system();
+
+    public LoginThrottle(){
+        for(int stripe = 0; stripe < stripes; ++stripe){
+            addresses[stripe] = new Source(maxAddressFailures);
+        }
+    }
+
+    LoginThrottle(EpochClock clock){
+        this();
+        this.clock = clock;
+    }
+
+    /**
+     * Checks whether a login attempt may proceed.
+     *
+     * @param address the client address, or null when unknown
+     * @return 0 when the attempt may proceed, otherwise the number of seconds until it may be retried
+     */
+    public long retryAfter(String username,String address){
+        long now = clock.epochSecond();
+        Source user = username == null ? null : usernames.get(username);
+        long remaining = Math.max(user == null ? 0L : user.lockedFor(now),
+                address == null ? 0L : address(address).lockedFor(now));
+        if(remaining > 0L){
+            throttled.increment();
+        }
+        return remaining;
+    }
+
+    /**
+     * Records a failed attempt, for an unknown username as well as for a wrong password.
+     */
+    public void failed(String username,String address){
+        long now = clock.epochSecond();
+        failures.increment();
+        if(username != null){
+            usernames.computeIfAbsent(username,name -> new Source(maxUsernameFailures)).fail(now);
+        }
+        if(address != null){
+            address(address).fail(now);
+        }
+    }
+
+    /**
+     * Clears the failures recorded against a username once its owner has logged in. The address keeps
+     * its count, so that a single valid account cannot be used to reset a stuffing run.
+     */
+    public void succeeded(String username){
+        Source user = username == null ? null : usernames.get(username);
+        if(user != null){
+            user.clear();
+        }
+    }
+
+    public long getFailureCount(){
+        return failures.sum();
+    }
+
+    public long getLockoutCount(){
+        return lockouts.sum();
+    }
+
+    public long getThrottledCount(){
+        return throttled.sum();
+    }
+
+    private Source address(String address){
+        int hash = address.hashCode();
+        return addresses[(hash^(hash>>>16))&(stripes-1)];
+    }
+
+    private final class Source {
+        /** window index (32 bits) | current window failures (16 bits) | previous window failures (16 bits) */
+        private final AtomicLong window = new AtomicLong();
+        /** lockout deadline in epoch seconds (56 bits) | lockout level (8 bits) */
+        private final AtomicLong lock = new AtomicLong();
+        private final int maxFailures;
+
+        Source(int maxFailures){
+            this.maxFailures = maxFailures;
+        }
+
+        long lockedFor(long now){
+            return Math.max(0L,(lock.get()>>>8)-now);
+        }
+
+        void fail(long now){
+            if(maxFailures <= 0){
+                return;
+            }
+            long index = now/LoginThrottle.this.window;
+            long previous, updated;
+            do {
+                previous = window.get();
+                long previousIndex = previous>>>32;
+                int current = (int) ((previous>>>16)&MAX_COUNT);
+                int last = (int) (previous&MAX_COUNT);
+                if(previousIndex != index){
+                    last = previousIndex == index-1L ? current : 0;
+                    current = 0;
+                }
+                current = Math.min(MAX_COUNT,current+1);
+                updated = (index<<32)|((long) current<<16)|last;
+            }while (!window.compareAndSet(previous,updated));
+            long length = LoginThrottle.this.window;
+            long current = (updated>>>16)&MAX_COUNT;
+            long last = updated&MAX_COUNT;
+            // the share of the previous window still covered by the sliding window
+            double estimate = current+last*(double) (length-now%length)/length;
+            if(estimate >= maxFailures){
+                lock(now);
+            }
+        }
+
+        private void lock(long now){
+            long previous, updated;
+            do {
+                previous = lock.get();
+                long deadline = previous>>>8;
+                if(deadline > now){
+                    return;
+                }
+                // a source which stayed quiet for a whole maximum lockout starts over at the base one
+                int level = deadline+maxLockout < now ? 0 : (int) (previous&0xFF);
+                long duration = Math.min(maxLockout,lockout<<level);
+                updated = ((now+duration)<<8)|Math.min(MAX_LEVEL,level+1);
+            }while (!lock.compareAndSet(previous,updated));
+            window.set(0L);
+            lockouts.increment();
+        }
+
+        void clear(){
+            window.set(0L);
+        }
+    }
+}
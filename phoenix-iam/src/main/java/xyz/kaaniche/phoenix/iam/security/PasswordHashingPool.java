@@ -0,0 +1,200 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Runs the Argon2 computations on a dedicated, bounded set of threads.
+ * <p>
+ * Every Argon2id computation allocates {@code argon2.memory} KiB of native memory, so the number of
+ * concurrent computations is capped by {@code argon2.max.concurrency}, by default what fits in
+ * {@code argon2.memory.budget} KiB (a quarter of the physical memory when not set) without exceeding
+ * the number of cores. At most {@code argon2.queue.size} requests wait for a worker; beyond that they
+ * are rejected at once with a {@link PasswordHashingSaturatedException} instead of piling up.
+ */
+@ApplicationScoped
+public class PasswordHashingPool {
+    private final Config config = ConfigProvider.getConfig();
+    private final int memory = config.getValue("argon2.memory",Integer.class);
+    private final long memoryBudget = config.getOptionalValue("argon2.memory.budget",Long.class)
+            .orElseGet(PasswordHashingPool::defaultMemoryBudget);
+    private final int concurrency = config.getOptionalValue("argon2.max.concurrency",Integer.class)
+            .orElse((int) Math.max(1L, Math.min(Runtime.getRuntime().availableProcessors(), memoryBudget/memory)));
+    private final int queueSize = config.getOptionalValue("argon2.queue.size",Integer.class).orElse(4*concurrency);
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void start(){
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(concurrency,concurrency,0L,TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),runnable -> {
+                    Thread thread = new Thread(runnable,"phoenix-argon2-"+count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void stop(){
+        executor.shutdownNow();
+    }
+
+    /**
+     * Verifies a password on the pool. The password array is wiped once checked, or right away when
+     * the pool is saturated.
+     *
+     * @throws PasswordHashingSaturatedException when no worker nor queue slot is available
+     */
+    public CompletableFuture<Boolean> verify(String serverHash,char[] clientHash){
+        try {
+            return CompletableFuture.supplyAsync(() -> timed(serverHash,clientHash),executor);
+        }catch (RejectedExecutionException e){
+            Arrays.fill(clientHash,'\0');
+            rejected.increment();
+            throw new PasswordHashingSaturatedException(retryAfter());
+        }
+    }
+
+    /**
+     * Verifies a password and, when it matches a hash computed with outdated Argon2 parameters, computes
+     * its replacement on the pool afterwards and passes it to {@code rehashed}. The rehash is skipped
+     * when the pool is saturated; it will be attempted again on the next login.
+     *
+     * @throws PasswordHashingSaturatedException when no worker nor queue slot is available
+     */
+    public CompletableFuture<Boolean> verify(String serverHash,char[] clientHash,Consumer<String> rehashed){
+        if(!Argon2Utility.needsRehash(serverHash)){
+            return verify(serverHash,clientHash);
+        }
+        char[] retained = clientHash.clone();
+        CompletableFuture<Boolean> verified;
+        try {
+            verified = verify(serverHash,clientHash);
+        }catch (PasswordHashingSaturatedException e){
+            Arrays.fill(retained,'\0');
+            throw e;
+        }
+        return verified.whenComplete((valid,error) -> {
+            if(error != null || !valid){
+                Arrays.fill(retained,'\0');
+                return;
+            }
+            try {
+                executor.execute(() -> rehashed.accept(Argon2Utility.hash(retained)));
+            }catch (RejectedExecutionException e){
+                Arrays.fill(retained,'\0');
+                rejected.increment();
+            }
+        });
+    }
+
+    /**
+     * Blocking form of {@link #verify(String, char[])}, for callers which cannot go asynchronous.
+     */
+    public boolean check(String serverHash,char[] clientHash){
+        return join(verify(serverHash,clientHash));
+    }
+
+    /**
+     * Blocking form of {@link #verify(String, char[], Consumer)}.
+     */
+    public boolean check(String serverHash,char[] clientHash,Consumer<String> rehashed){
+        return join(verify(serverHash,clientHash,rehashed));
+    }
+
+    private static boolean join(CompletableFuture<Boolean> verified){
+        try {
+            return verified.join();
+        }catch (CompletionException e){
+            if(e.getCause() instanceof RuntimeException cause){
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private boolean timed(String serverHash,char[] clientHash){
+        long start = System.nanoTime();
+        try {
+            return Argon2Utility.check(serverHash,clientHash);
+        }finally {
+            long elapsed = System.nanoTime()-start;
+            completed.increment();
+            totalNanos.add(elapsed);
+            maxNanos.accumulate(elapsed);
+        }
+    }
+
+    /**
+     * @return the time, in whole seconds, the current backlog needs to drain
+     */
+    private long retryAfter(){
+        long count = completed.sum();
+        long averageNanos = count == 0L ? TimeUnit.SECONDS.toNanos(1L) : totalNanos.sum()/count;
+        long backlog = executor.getQueue().size()+executor.getActiveCount();
+        return Math.max(1L, TimeUnit.NANOSECONDS.toSeconds(averageNanos*backlog/concurrency)+1L);
+    }
+
+    private static long defaultMemoryBudget(){
+        if(ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os){
+            return os.getTotalMemorySize()/1024L/4L;
+        }
+        return 512L*1024L;
+    }
+
+    public int getConcurrency(){
+        return concurrency;
+    }
+
+    public int getQueueDepth(){
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount(){
+        return executor.getActiveCount();
+    }
+
+    public long getRejectedCount(){
+        return rejected.sum();
+    }
+
+    public long getCompletedCount(){
+        return completed.sum();
+    }
+
+    /**
+     * @return the mean duration of a verification in milliseconds
+     */
+    public double getMeanLatency(){
+        long count = completed.sum();
+        return count == 0L ? 0d : totalNanos.sum()/(count*1e6);
+    }
+
+    /**
+     * @return the longest verification duration seen, in milliseconds
+     */
+    public double getMaxLatency(){
+        return maxNanos.get()/1e6;
+    }
+}
@@ -0,0 +1,23 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+/**
+ * Thrown when the {@link PasswordHashingPool} turns a password verification away because all its
+ * workers are busy and its wait queue is full.
+ */
+public class PasswordHashingSaturatedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfter;
+
+    public PasswordHashingSaturatedException(long retryAfter) {
+        super("Password hashing capacity exceeded, retry after " + retryAfter + "s");
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return the number of seconds a client should wait before retrying, for the Retry-After header
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
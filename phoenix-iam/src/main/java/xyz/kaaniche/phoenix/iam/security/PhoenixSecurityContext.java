@@ -0,0 +1,62 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import jakarta.ws.rs.core.SecurityContext;
+import xyz.kaaniche.phoenix.iam.controllers.RoleCodec;
+
+import java.security.Principal;
+
+/**
+ * The security context of a caller authenticated by {@link AuthenticationFilter}, holding its roles
+ * as the mask {@link RoleCodec} encodes, so that role checks are bit tests.
+ */
+public class PhoenixSecurityContext implements SecurityContext {
+    private final Principal userPrincipal;
+    private final long roleMask;
+    private final boolean secure;
+    private final String authenticationScheme;
+
+    public PhoenixSecurityContext(Principal userPrincipal,long roleMask,boolean secure,String authenticationScheme){
+        this.userPrincipal = userPrincipal;
+        this.roleMask = roleMask;
+        this.secure = secure;
+        this.authenticationScheme = authenticationScheme;
+    }
+
+    @Override
+    public Principal getUserPrincipal() {
+        return userPrincipal;
+    }
+
+    @Override
+    public boolean isUserInRole(String role) {
+        long mask = RoleCodec.mask(role);
+        if(mask < 0L){
+            return false;
+        }
+        if(mask == Long.MAX_VALUE || mask == 0L || roleMask == Long.MAX_VALUE){
+            return roleMask == mask;
+        }
+        return (roleMask&mask) != 0L;
+    }
+
+    /**
+     * @return whether the caller holds any of the roles of the requirement
+     */
+    public boolean satisfies(RoleRequirement requirement){
+        return requirement.test(roleMask);
+    }
+
+    public long getRoleMask() {
+        return roleMask;
+    }
+
+    @Override
+    public boolean isSecure() {
+        return secure;
+    }
+
+    @Override
+    public String getAuthenticationScheme() {
+        return authenticationScheme;
+    }
+}
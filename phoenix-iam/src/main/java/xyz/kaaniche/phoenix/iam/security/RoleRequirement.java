@@ -0,0 +1,43 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import xyz.kaaniche.phoenix.iam.controllers.RoleCodec;
+
+/**
+ * A list of allowed roles, as found in {@code @RolesAllowed}, resolved once into a mask so that it is
+ * checked against a caller's role mask with a single bit test whatever its length.
+ * <p>
+ * Root and guest are exclusive masks rather than bits: a root caller ({@link Long#MAX_VALUE}) only
+ * satisfies requirements naming root, and a guest caller (0) only those naming guest.
+ *
+ * @param anyOf the bits of the allowed roles
+ * @param root whether root is allowed
+ * @param guest whether guest is allowed
+ */
+public record RoleRequirement(long anyOf,boolean root,boolean guest) {
+
+    public static RoleRequirement anyOf(String... roles){
+        long anyOf = 0L;
+        boolean root = false, guest = false;
+        for(String role:roles){
+            long mask = RoleCodec.mask(role);
+            if(mask == Long.MAX_VALUE){
+                root = true;
+            }else if(mask == 0L){
+                guest = true;
+            }else if(mask > 0L){
+                anyOf |= mask;
+            }
+        }
+        return new RoleRequirement(anyOf,root,guest);
+    }
+
+    public boolean test(long roleMask){
+        if(roleMask == Long.MAX_VALUE){
+            return root;
+        }
+        if(roleMask == 0L){
+            return guest;
+        }
+        return (roleMask&anyOf) != 0L;
+    }
+}
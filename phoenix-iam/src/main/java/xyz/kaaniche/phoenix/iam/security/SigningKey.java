@@ -0,0 +1,41 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.Ed25519Signer;
+import com.nimbusds.jose.crypto.Ed25519Verifier;
+import com.nimbusds.jose.jwk.OctetKeyPair;
+
+/**
+ * An entry of the {@link KeyRing}. The signer, the verifier and the JWS header are prepared once
+ * per key, so issuing and validating tokens does not rebuild them.
+ *
+ * @param keyPair       the private Ed25519 key pair
+ * @param publicKey     its public part, as published to resource servers
+ * @param signer        signs with {@code keyPair}, thread-safe
+ * @param verifier      verifies with {@code publicKey}, thread-safe
+ * @param header        the JWS header of the tokens signed with this key
+ * @param encodedHeader the Base64url encoding of {@code header}
+ * @param notAfter      epoch second after which the key no longer signs new tokens
+ * @param retireAfter   epoch second after which tokens signed by the key can no longer be valid
+ */
+record SigningKey(OctetKeyPair keyPair, OctetKeyPair publicKey, JWSSigner signer, JWSVerifier verifier,
+                  JWSHeader header, String encodedHeader, long notAfter, long retireAfter) {
+    static SigningKey of(OctetKeyPair keyPair, long notAfter, long retireAfter) throws JOSEException {
+        OctetKeyPair publicKey = keyPair.toPublicJWK();
+        JWSHeader header = new JWSHeader.Builder(JWSAlgorithm.EdDSA)
+                .keyID(keyPair.getKeyID())
+                .type(JOSEObjectType.JWT)
+                .build();
+        return new SigningKey(keyPair, publicKey, new Ed25519Signer(keyPair), new Ed25519Verifier(publicKey),
+                header, header.toBase64URL().toString(), notAfter, retireAfter);
+    }
+
+    String kid() {
+        return keyPair.getKeyID();
+    }
+}
@@ -0,0 +1,17 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+
+import java.util.Set;
+
+/**
+ * An access token whose signature has been checked by {@link JwtManager#verify(String)}.
+ *
+ * @param kid       the id of the key which signed the token
+ * @param claims    the parsed claims
+ * @param roles     the roles found in the {@code jwt.claim.roles} claim
+ * @param roleMask  the same roles encoded by {@link xyz.kaaniche.phoenix.iam.controllers.RoleCodec}
+ * @param expiresAt the {@code exp} claim, as an epoch second
+ */
+public record VerifiedToken(String kid, JWTClaimsSet claims, Set<String> roles, long roleMask, long expiresAt) {
+}
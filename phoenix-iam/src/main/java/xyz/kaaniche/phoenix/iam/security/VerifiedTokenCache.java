@@ -0,0 +1,64 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import xyz.kaaniche.phoenix.iam.controllers.BoundedCache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+
+/**
+ * Remembers the tokens {@link JwtManager} has already verified, so a client reusing its access
+ * token does not pay for an EdDSA verification and a claims parse on every request.
+ * Entries are keyed by the SHA-256 digest of the compact token, never by the token itself.
+ */
+public final class VerifiedTokenCache {
+    private final BoundedCache<ByteBuffer,VerifiedToken> cache;
+
+    VerifiedTokenCache(int maximumSize){
+        cache = new BoundedCache<>(maximumSize);
+    }
+
+    static ByteBuffer key(String token){
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256")
+                    .digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    VerifiedToken get(ByteBuffer key){
+        return cache.get(key);
+    }
+
+    void put(ByteBuffer key,VerifiedToken token){
+        cache.put(key,token);
+    }
+
+    void invalidate(ByteBuffer key){
+        cache.remove(key);
+    }
+
+    /**
+     * Drops the tokens signed by retired keys.
+     */
+    void invalidateKeys(Set<String> kids){
+        if(!kids.isEmpty()){
+            cache.removeIf((key,token) -> kids.contains(token.kid()));
+        }
+    }
+
+    public int size(){
+        return cache.size();
+    }
+
+    public long hits(){
+        return cache.hits();
+    }
+
+    public long misses(){
+        return cache.misses();
+    }
+}
@@ -0,0 +1,11 @@
+-- Table of xyz.kaaniche.phoenix.iam.entities.RolePermission, read by PermissionRegistry.
+-- persistence.xml only validates the schema, so run this once against the IAM database before
+-- deploying a version mapping the entity.
+CREATE TABLE IF NOT EXISTS role_permissions (
+    id          BIGINT       NOT NULL AUTO_INCREMENT,
+    role        VARCHAR(191) NOT NULL,
+    action      VARCHAR(16)  NOT NULL,
+    entity_type VARCHAR(191) NOT NULL,
+    entity_id   VARCHAR(191) NULL,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
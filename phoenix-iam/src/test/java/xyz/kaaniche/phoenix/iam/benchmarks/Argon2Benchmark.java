@@ -0,0 +1,63 @@
+package xyz.kaaniche.phoenix.iam.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.kaaniche.phoenix.iam.security.Argon2Utility;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Argon2id hashing and verification at the {@code argon2.*} parameters of the configuration.
+ * Each operation takes a sizeable fraction of a second, hence the short measurement.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class Argon2Benchmark {
+    private static final String PASSWORD = "fLGVAI2KKzj6C1aXRYwLDbztILRatmBVRXribg/QMynib8kOMK293LJoAKOrNmOI";
+
+    private String hash;
+
+    @Setup
+    public void setUp() {
+        hash = Argon2Utility.hash(PASSWORD.toCharArray());
+    }
+
+    // Argon2Utility wipes the password it is given, so every operation gets its own copy
+
+    @Benchmark
+    @Threads(1)
+    public String hash() {
+        return Argon2Utility.hash(PASSWORD.toCharArray());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String hashConcurrent() {
+        return Argon2Utility.hash(PASSWORD.toCharArray());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean check() {
+        return Argon2Utility.check(hash, PASSWORD.toCharArray());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean checkConcurrent() {
+        return Argon2Utility.check(hash, PASSWORD.toCharArray());
+    }
+}
@@ -0,0 +1,105 @@
+package xyz.kaaniche.phoenix.iam.benchmarks;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.SecurityContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.kaaniche.phoenix.iam.security.AuthenticationFilter;
+import xyz.kaaniche.phoenix.iam.security.CallerContextHolder;
+import xyz.kaaniche.phoenix.iam.security.JwtManager;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bearer token authentication overhead of the {@link AuthenticationFilter}: parsing the header,
+ * answering from the verified token cache and installing the security context. Verified tokens are
+ * cached, so the signature check is out of the picture. The former per-request JNDI lookup of the
+ * {@link JwtManager} is not compared here, as its cost is the container's and a stub outside of it
+ * would not tell it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthenticationFilterBenchmark {
+    private JwtManager manager;
+
+    private AuthenticationFilter filter;
+    private ContainerRequestContext request;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        manager = new JwtManager();
+        manager.start();
+        String authorization = "Bearer " + manager.generateAccessToken("api", "alice",
+                "resource.read resource.write", new String[]{"Surfer", "Moderator"});
+        filter = new AuthenticationFilter();
+        // injected by the container
+        Field holder = AuthenticationFilter.class.getDeclaredField("callerContextHolder");
+        holder.setAccessible(true);
+        holder.set(filter, new CallerContextHolder());
+        // looked up through the container's JNDI on first use
+        Field jwtManager = AuthenticationFilter.class.getDeclaredField("jwtManager");
+        jwtManager.setAccessible(true);
+        jwtManager.set(filter, manager);
+        request = requestContext(authorization);
+    }
+
+    @Benchmark
+    public SecurityContext filter() {
+        filter.filter(request);
+        return request.getSecurityContext();
+    }
+
+    /**
+     * @return a request context holding just an Authorization header and a security context
+     */
+    private static ContainerRequestContext requestContext(String authorization) {
+        SecurityContext[] securityContext = {new SecurityContext() {
+            @Override
+            public Principal getUserPrincipal() {
+                return null;
+            }
+
+            @Override
+            public boolean isUserInRole(String role) {
+                return false;
+            }
+
+            @Override
+            public boolean isSecure() {
+                return true;
+            }
+
+            @Override
+            public String getAuthenticationScheme() {
+                return null;
+            }
+        }};
+        return (ContainerRequestContext) Proxy.newProxyInstance(ContainerRequestContext.class.getClassLoader(),
+                new Class<?>[]{ContainerRequestContext.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getHeaderString" -> HttpHeaders.AUTHORIZATION.equals(args[0]) ? authorization : null;
+                    case "getSecurityContext" -> securityContext[0];
+                    case "setSecurityContext" -> {
+                        securityContext[0] = (SecurityContext) args[0];
+                        yield null;
+                    }
+                    case "abortWith" -> throw new IllegalStateException("request aborted");
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,79 @@
+package xyz.kaaniche.phoenix.iam.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.kaaniche.phoenix.iam.security.AuthorizationCode;
+import xyz.kaaniche.phoenix.iam.security.CodeKey;
+import xyz.kaaniche.phoenix.iam.security.CodeKeyRing;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authorization code minting and PKCE redemption throughput, the codes being sealed by a key of a
+ * two key ring.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthorizationCodeBenchmark {
+    private static final String CODE_VERIFIER = "dBjftJeZ4CVP-mB92K27uhbUJU1p1r_wW1gFWFOEjXk";
+
+    private CodeKeyRing keyRing;
+    private CodeKey key;
+    private AuthorizationCode authorizationCode;
+    private String codeChallenge;
+    private String code;
+
+    @Setup
+    public void setUp() throws Exception {
+        long notAfter = Instant.now().plusSeconds(3600).getEpochSecond();
+        key = CodeKey.generate(notAfter, notAfter + 300L);
+        keyRing = new CodeKeyRing(List.of(key, CodeKey.generate(notAfter + 3600L, notAfter + 3900L)));
+        authorizationCode = new AuthorizationCode("api", "alice", "resource.read resource.write",
+                Instant.now().plusSeconds(3600).getEpochSecond(), "https://client.phoenix.xyz/callback");
+        codeChallenge = Base64.getUrlEncoder().withoutPadding().encodeToString(MessageDigest.getInstance("SHA-256")
+                .digest(CODE_VERIFIER.getBytes(StandardCharsets.UTF_8)));
+        code = authorizationCode.getCode(key, codeChallenge);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String getCode() throws Exception {
+        return authorizationCode.getCode(key, codeChallenge);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String getCodeConcurrent() throws Exception {
+        return authorizationCode.getCode(key, codeChallenge);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public AuthorizationCode decode() throws Exception {
+        return AuthorizationCode.decode(code, CODE_VERIFIER, keyRing);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public AuthorizationCode decodeConcurrent() throws Exception {
+        return AuthorizationCode.decode(code, CODE_VERIFIER, keyRing);
+    }
+}
@@ -0,0 +1,149 @@
+package xyz.kaaniche.phoenix.iam.benchmarks;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how many concurrent connections a deployed IAM serves, to compare the {@code platform} and
+ * {@code virtual} values of {@code iam.execution.mode}. Every simulated client keeps one request in
+ * flight, sending the next as soon as the previous completes, for the given duration. Client
+ * concurrency is raised step by step; a server whose worker pool is exhausted shows it as flat
+ * throughput with latency growing with the number of clients, and eventually as timeouts.
+ * <p>
+ * Only successful answers are timed: a 2xx, or a See Other whose location carries no {@code error}
+ * parameter, as the login and consent stages report their failures through the redirect. Anything
+ * else counts as an error, listed by status after each step, so that a run answered by a cheap
+ * rejection does not pass for a measurement.
+ * <p>
+ * Run it against the same deployment once per mode, on a Java 21 runtime since the {@code virtual}
+ * mode falls back to {@code platform} on older ones (the statistics endpoint tells the active mode),
+ * with a repeatable target blocking on the database such as the consent stage, which reads the roles
+ * of the identity and upserts its grant on the endpoint executor:
+ * <pre>
+ * mvn -Pload verify -Dload.url=http://localhost:8080/iam/login/authorization -Dload.method=PATCH \
+ *     -Dload.cookie='signInId=tenant#scope$https://client/callback$code$challenge$' \
+ *     -Dload.body="approval_status=YES&amp;approved_scope=scope&amp;username=alice" -Dload.clients=100,1000,5000
+ * </pre>
+ * An authorization code is spent by its first redemption, so the token endpoint cannot be replayed
+ * this way. A GET is sent when neither a method nor a body is given, a POST when only a body is.
+ */
+public class EndpointLoadTest {
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.err.println("usage: EndpointLoadTest url [clients,...] [seconds] [form body] [method] [cookie]");
+            System.exit(2);
+        }
+        URI uri = URI.create(args[0]);
+        int[] steps = Arrays.stream((args.length > 1 ? args[1] : "100,1000").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        String body = args.length > 3 && !args[3].isEmpty() ? args[3] : null;
+        String method = args.length > 4 && !args[4].isEmpty() ? args[4] : body == null ? "GET" : "POST";
+        String cookie = args.length > 5 && !args[5].isEmpty() ? args[5] : null;
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        System.out.printf("%8s %12s %10s %10s %10s %8s%n", "clients", "requests/s", "p50 ms", "p99 ms", "max ms", "errors");
+        for (int clients : steps) {
+            Step step = new Step(client, request(uri, method, body, cookie), seconds);
+            step.run(clients);
+            step.print(clients);
+        }
+    }
+
+    private static HttpRequest request(URI uri, String method, String body, String cookie) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30));
+        if (cookie != null) {
+            request.header("Cookie", cookie);
+        }
+        if (body == null) {
+            return request.method(method, HttpRequest.BodyPublishers.noBody()).build();
+        }
+        return request.header("Content-Type", "application/x-www-form-urlencoded")
+                .method(method, HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+
+    /**
+     * @return true for a 2xx, or for a See Other not reporting an error through its location
+     */
+    static boolean succeeded(HttpResponse<?> response) {
+        int status = response.statusCode();
+        if (status >= 200 && status < 300) {
+            return true;
+        }
+        return status == 303 && response.headers().firstValue("Location")
+                .map(location -> !location.contains("?error=") && !location.contains("&error="))
+                .orElse(false);
+    }
+
+    private static final class Step {
+        private final HttpClient client;
+        private final HttpRequest request;
+        private final long deadline;
+        private final long seconds;
+        private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        private final LongAdder errors = new LongAdder();
+        /** error counts by status, -1 standing for a failure to get any response */
+        private final Map<Integer, LongAdder> failures = new ConcurrentHashMap<>();
+
+        Step(HttpClient client, HttpRequest request, int seconds) {
+            this.client = client;
+            this.request = request;
+            this.seconds = seconds;
+            this.deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        }
+
+        void run(int clients) {
+            CompletableFuture<?>[] loops = new CompletableFuture<?>[clients];
+            for (int i = 0; i < clients; ++i) {
+                loops[i] = loop();
+            }
+            CompletableFuture.allOf(loops).join();
+        }
+
+        /**
+         * @return a chain of requests sent one after the other until the deadline
+         */
+        private CompletableFuture<Void> loop() {
+            if (System.nanoTime() >= deadline) {
+                return CompletableFuture.completedFuture(null);
+            }
+            long start = System.nanoTime();
+            return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .handle((response, failure) -> {
+                        if (failure != null || !succeeded(response)) {
+                            errors.increment();
+                            failures.computeIfAbsent(failure != null ? -1 : response.statusCode(),
+                                    status -> new LongAdder()).increment();
+                        } else {
+                            latencies.add(System.nanoTime() - start);
+                        }
+                        return null;
+                    })
+                    .thenCompose(ignored -> loop());
+        }
+
+        void print(int clients) {
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            System.out.printf("%8d %12.1f %10.1f %10.1f %10.1f %8d%n", clients, (double) sorted.length / seconds,
+                    percentile(sorted, 0.50), percentile(sorted, 0.99),
+                    sorted.length == 0 ? 0.0 : sorted[sorted.length - 1] / 1e6, errors.sum());
+            failures.forEach((status, count) -> System.out.printf("%8s %s: %d%n", "",
+                    status < 0 ? "no response" : "status " + status, count.sum()));
+        }
+
+        private static double percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0.0;
+            }
+            return sorted[(int) Math.min(sorted.length - 1, Math.floor(quantile * sorted.length))] / 1e6;
+        }
+    }
+}
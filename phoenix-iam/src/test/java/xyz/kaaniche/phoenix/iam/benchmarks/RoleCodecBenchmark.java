@@ -0,0 +1,57 @@
+package xyz.kaaniche.phoenix.iam.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.kaaniche.phoenix.iam.controllers.Role;
+import xyz.kaaniche.phoenix.iam.controllers.RoleCodec;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Role bit mask decoding, against the scan over every {@link Role} the repository used to do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoleCodecBenchmark {
+    @Param({"1", "5", "7"})
+    private long mask;
+
+    @Benchmark
+    public String[] legacyScan() {
+        Set<String> ret = new HashSet<>();
+        for(Role role:Role.values()){
+            if((mask&role.getValue())!=0L){
+                String value = Role.byValue(role.getValue());
+                if (value==null){
+                    continue;
+                }
+                ret.add(value);
+            }
+        }
+        return ret.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public String[] names() {
+        return RoleCodec.names(mask);
+    }
+
+    @Benchmark
+    public Set<String> groups() {
+        return RoleCodec.groups(mask);
+    }
+}
@@ -0,0 +1,46 @@
+package xyz.kaaniche.phoenix.iam.controllers;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PermissionIndexTest {
+    private static final long SURFER = 1L;
+    private static final long MODERATOR = 2L;
+
+    private final PermissionIndex index = PermissionIndex.builder()
+            .grant(SURFER,SecureAction.EDIT,String.class,42L)
+            .grant(MODERATOR,SecureAction.EDIT,String.class,null)
+            .grant(MODERATOR,SecureAction.DELETE,Integer.class,7L)
+            .grant(0L,SecureAction.SAVE,String.class,null)
+            .build();
+
+    @Test
+    public void specificIdsAndWildcards(){
+        assertTrue(index.allows(SURFER,SecureAction.EDIT,String.class,42L));
+        assertFalse(index.allows(SURFER,SecureAction.EDIT,String.class,43L));
+        assertFalse(index.allows(SURFER,SecureAction.DELETE,String.class,42L));
+        assertTrue(index.allows(MODERATOR,SecureAction.EDIT,String.class,43L));
+        assertFalse(index.allows(MODERATOR,SecureAction.EDIT,Integer.class,43L));
+    }
+
+    @Test
+    public void rolesAreUnited(){
+        long both = SURFER|MODERATOR;
+        assertTrue(index.allows(both,SecureAction.EDIT,String.class,43L));
+        assertTrue(index.allows(both,SecureAction.DELETE,Integer.class,7L));
+        assertFalse(index.allows(both,SecureAction.DELETE,Integer.class,8L));
+        assertFalse(index.allows(SURFER|4L,SecureAction.DELETE,Integer.class,7L));
+    }
+
+    @Test
+    public void rootGuestAndUnknown(){
+        assertTrue(index.allows(Long.MAX_VALUE,SecureAction.DELETE,Long.class,1L));
+        assertTrue(index.allows(0L,SecureAction.SAVE,String.class,null));
+        assertFalse(index.allows(0L,SecureAction.EDIT,String.class,42L));
+        assertFalse(index.allows(SURFER,SecureAction.SAVE,String.class,null));
+        assertFalse(index.allows(-1L,SecureAction.EDIT,String.class,42L));
+        assertFalse(PermissionIndex.EMPTY.allows(SURFER,SecureAction.EDIT,String.class,42L));
+    }
+}
@@ -0,0 +1,29 @@
+package xyz.kaaniche.phoenix.iam.controllers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RoleCodecTest {
+    @Test
+    public void decodesSetBits(){
+        assertEquals(List.of("Surfer","Administrator"),List.copyOf(RoleCodec.groups(5L)));
+        assertArrayEquals(new String[]{"Moderator"},RoleCodec.names(2L));
+        assertEquals(Set.of("Surfer"),RoleCodec.groups(1L|(1L<<40)));
+        assertSame(RoleCodec.names(7L),RoleCodec.names(7L));
+    }
+
+    @Test
+    public void guestAndRootAreExclusive(){
+        assertEquals(Set.of("guest"),RoleCodec.groups(0L));
+        assertEquals(Set.of("root"),RoleCodec.groups(Long.MAX_VALUE));
+        assertEquals(Set.of("Moderator","Administrator"),RoleCodec.groups(Long.MAX_VALUE-1L));
+        assertThrows(IllegalArgumentException.class,() -> RoleCodec.groups(-1L));
+    }
+}
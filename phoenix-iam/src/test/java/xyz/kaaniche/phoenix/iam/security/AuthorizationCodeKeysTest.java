@@ -0,0 +1,88 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class AuthorizationCodeKeysTest {
+    private static final String CODE_VERIFIER = "dBjftJeZ4CVP-mB92K27uhbUJU1p1r_wW1gFWFOEjXk";
+
+    private final long[] now = {1_700_000_000L};
+
+    @TempDir
+    Path directory;
+
+    private AuthorizationCodeKeys node(){
+        AuthorizationCodeKeys keys = new AuthorizationCodeKeys(directory.resolve("code-keys.properties"),() -> now[0],
+                Logger.getLogger(AuthorizationCodeKeysTest.class.getName()));
+        keys.rotate();
+        return keys;
+    }
+
+    private AuthorizationCode grant(){
+        return new AuthorizationCode("api","alice","resource.read",now[0]+120L,"https://client.phoenix.xyz/callback");
+    }
+
+    private static String challenge() throws Exception {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(MessageDigest.getInstance("SHA-256")
+                .digest(CODE_VERIFIER.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void codesRedeemOnAnyNode() throws Exception {
+        AuthorizationCodeKeys a = node();
+        AuthorizationCodeKeys b = node();
+        AuthorizationCode grant = grant();
+        assertEquals(grant,b.open(a.seal(grant,challenge()),CODE_VERIFIER));
+        assertEquals(grant,a.open(b.seal(grant,challenge()),CODE_VERIFIER));
+        assertNull(b.open(a.seal(grant,challenge()),"another verifier"));
+    }
+
+    @Test
+    public void payloadCannotBeAltered() throws Exception {
+        AuthorizationCodeKeys keys = node();
+        String code = keys.seal(grant(),challenge());
+        String[] fields = code.split(":");
+        fields[5] = Base64.getEncoder().withoutPadding().encodeToString(("api:mallory:resource.read:"+(now[0]+120L)
+                +":https://client.phoenix.xyz/callback").getBytes(StandardCharsets.UTF_8));
+        assertNull(keys.open(String.join(":",fields),CODE_VERIFIER));
+        assertNull(keys.open("urn:phoenix:code:garbage",CODE_VERIFIER));
+    }
+
+    @Test
+    public void truncatedCodesAreRejected() throws Exception {
+        AuthorizationCodeKeys keys = node();
+        String code = keys.seal(grant(),challenge());
+        String sealed = code.substring(0,code.lastIndexOf(':')+1);
+        assertNull(keys.open(sealed+"AAAA",CODE_VERIFIER));
+        assertNull(keys.open(sealed,CODE_VERIFIER));
+        assertNull(keys.open(sealed+"not base64!",CODE_VERIFIER));
+        assertNull(keys.open(code.substring(0,code.length()-4),CODE_VERIFIER));
+    }
+
+    @Test
+    public void rotatesAndPicksUpKeysOfOtherNodes() throws Exception {
+        AuthorizationCodeKeys a = node();
+        AuthorizationCodeKeys b = node();
+        String first = AuthorizationCode.kid(a.seal(grant(),challenge()));
+        now[0] += 3601L;
+        a.rotate();
+        String code = a.seal(grant(),challenge());
+        assertNotEquals(first,AuthorizationCode.kid(code));
+        // b has not rotated yet and reloads the store on meeting the new kid
+        assertNotNull(b.open(code,CODE_VERIFIER));
+        now[0] += 3601L;
+        a.rotate();
+        assertNotEquals(AuthorizationCode.kid(code),AuthorizationCode.kid(a.seal(grant(),challenge())));
+    }
+}
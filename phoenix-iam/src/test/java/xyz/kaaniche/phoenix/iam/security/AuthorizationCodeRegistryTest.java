@@ -0,0 +1,61 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AuthorizationCodeRegistryTest {
+    private final long[] now = {1_700_000_000L};
+    private final AuthorizationCodeRegistry registry = new AuthorizationCodeRegistry(() -> now[0]);
+
+    @Test
+    public void rejectsReplays(){
+        UUID code = UUID.randomUUID();
+        assertTrue(registry.redeem(code,now[0]+120L));
+        assertFalse(registry.redeem(code,now[0]+120L));
+        assertTrue(registry.redeem(UUID.randomUUID(),now[0]+120L));
+        assertEquals(1L,registry.getReplayCount());
+        assertEquals(2,registry.size());
+    }
+
+    @Test
+    public void forgetsCodesOnceExpired(){
+        UUID code = UUID.randomUUID();
+        assertTrue(registry.redeem(code,now[0]+120L));
+        assertTrue(registry.redeem(UUID.randomUUID(),now[0]+10L));
+        now[0] += 11L;
+        registry.redeem(null,0L);
+        assertEquals(1,registry.size());
+        now[0] += 110L;
+        assertFalse(registry.redeem(code,now[0]-1L));
+        assertEquals(0,registry.size());
+        // idle for more than a turn of the wheel
+        assertTrue(registry.redeem(code,now[0]+60L));
+        now[0] += 10_000L;
+        registry.redeem(null,0L);
+        assertEquals(0,registry.size());
+    }
+
+    @Test
+    public void failsClosedBeyondHorizon(){
+        assertFalse(registry.redeem(UUID.randomUUID(),now[0]+3600L));
+        assertEquals(1L,registry.getRefusedCount());
+        assertEquals(0,registry.size());
+    }
+
+    @Test
+    public void extractsCodeId() throws Exception {
+        String code = new AuthorizationCode("tenant","alice","openid",now[0]+120L,"https://client/cb")
+                .getCode(CodeKey.generate(now[0]+3600L,now[0]+3900L),"challenge");
+        UUID id = AuthorizationCode.codeId(code);
+        assertEquals(id,AuthorizationCode.codeId(code));
+        assertTrue(code.contains(id.toString()));
+        assertNull(AuthorizationCode.codeId("urn:phoenix:code:not-a-uuid:xyz"));
+        assertNull(AuthorizationCode.codeId(null));
+    }
+}
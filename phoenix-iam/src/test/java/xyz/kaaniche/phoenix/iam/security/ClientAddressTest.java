@@ -0,0 +1,33 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ClientAddressTest {
+    private static final String PROXY = "10.0.0.1";
+
+    private final ClientAddress clientAddress = new ClientAddress(List.of(PROXY," 10.0.0.2"));
+
+    @Test
+    public void resolvesClientsBehindTrustedProxies(){
+        assertEquals("198.51.100.7",clientAddress.of(PROXY,"198.51.100.7"));
+        assertEquals("198.51.100.7",clientAddress.of(PROXY,"203.0.113.1, 198.51.100.7, 10.0.0.2"));
+        assertEquals(PROXY,clientAddress.of(PROXY,null));
+        assertEquals("203.0.113.9",clientAddress.of("203.0.113.9","198.51.100.7"));
+    }
+
+    @Test
+    public void clientsSharingAProxyAreThrottledApart(){
+        long[] now = {1_700_000_000L};
+        LoginThrottle throttle = new LoginThrottle(() -> now[0]);
+        String attacker = clientAddress.of(PROXY,"198.51.100.66");
+        for(int i=0;i<20;++i){
+            throttle.failed("user"+i,attacker);
+        }
+        assertEquals(30L,throttle.retryAfter("anyone",attacker));
+        assertEquals(0L,throttle.retryAfter("grace",clientAddress.of(PROXY,"198.51.100.8")));
+    }
+}
@@ -1,16 +1,31 @@
 package xyz.kaaniche.phoenix.iam.security;
 
 import com.google.crypto.tink.subtle.XChaCha20Poly1305;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.JWT;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import javax.crypto.KeyGenerator;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.text.ParseException;
 import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class JwtManagerTest {
     private static JwtManager manager;
@@ -35,6 +50,74 @@ public class JwtManagerTest {
         assertEquals(Long.MAX_VALUE,sum);
     }
 
+    @Test
+    public void testValidateJWT() throws ParseException {
+        String token = manager.generateAccessToken("api", "alice","resource.read", new String[]{"surfer"});
+        JWT jwt = manager.validateJWT(token).orElseThrow();
+        assertEquals("alice", jwt.getJWTClaimsSet().getSubject());
+        assertEquals("api", jwt.getJWTClaimsSet().getStringClaim("tenant_id"));
+    }
+
+    @Test
+    public void testVerifyCachesToken(){
+        String token = manager.generateAccessToken("api", "bob","resource.read", new String[]{"surfer","moderator"});
+        VerifiedTokenCache cache = manager.getVerifiedTokenCache().orElseThrow();
+        long hits = cache.hits();
+        VerifiedToken first = manager.verify(token).orElseThrow();
+        VerifiedToken second = manager.verify(token).orElseThrow();
+        assertSame(first, second);
+        assertEquals(hits+1, cache.hits());
+        assertEquals(Set.of("surfer","moderator"), second.roles());
+    }
+
+    @Test
+    public void testPublicValidationKeySet() throws ParseException {
+        JwkDocument document = manager.getPublicValidationKeySet();
+        JWKSet keys = JWKSet.parse(new String(document.content(), StandardCharsets.UTF_8));
+        assertFalse(keys.getKeys().isEmpty());
+        assertTrue(keys.getKeys().stream().noneMatch(JWK::isPrivate));
+        assertSame(document, manager.getPublicValidationKeySet());
+    }
+
+    @Test
+    public void testAccessTokenMatchesNimbusSerialization() throws Exception {
+        String[][] roles = {{"manager", "surfer"}, {}, null};
+        for (String[] r : roles) {
+            for (String tenant : new String[]{"api", null}) {
+                String token = manager.generateAccessToken(tenant, "alice@phoenix.xyz", "resource.read resource.write", r);
+                JWTClaimsSet claims = SignedJWT.parse(token).getJWTClaimsSet();
+                String expected = manager.signAccessToken(manager.getSigningKey(), tenant, "alice@phoenix.xyz",
+                        "resource.read resource.write", r, claims.getJWTID(), claims.getIssueTime().getTime() / 1000L);
+                assertEquals(expected, token);
+            }
+        }
+    }
+
+    @Test
+    public void testGenerateAccessTokens() {
+        List<AccessTokenRequest> requests = IntStream.range(0, 200)
+                .mapToObj(i -> new AccessTokenRequest("api", "device-" + i, "telemetry.write", new String[]{"surfer"}))
+                .toList();
+        Map<Integer, String> tokens = new ConcurrentHashMap<>();
+        manager.generateAccessTokens(requests, (token, index) -> tokens.put(index, token)).join();
+        assertEquals(requests.size(), tokens.size());
+        assertEquals("device-42", manager.verify(tokens.get(42)).orElseThrow().claims().getSubject());
+    }
+
+    @Test
+    public void testExpiryFollowsClock() {
+        AtomicLong now = new AtomicLong(1_700_000_000L);
+        JwtManager clocked = new JwtManager(now::get);
+        clocked.start();
+        String token = clocked.generateAccessToken("api", "carol", "resource.read", new String[]{"surfer"});
+        now.addAndGet(1020L);
+        assertTrue(clocked.verify(token).isPresent());
+        now.addAndGet(1L);
+        assertTrue(clocked.verify(token).isEmpty());
+        assertTrue(clocked.validateJWT(token).isEmpty());
+        clocked.stop();
+    }
+
     @Test
     public void testXChaCha20Poly1305() throws GeneralSecurityException {
         String associatedData = "urn:phoenix:code:dummy_random:more_info";
@@ -0,0 +1,62 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LoginThrottleTest {
+    private final long[] now = {1_700_000_000L};
+    private final LoginThrottle throttle = new LoginThrottle(() -> now[0]);
+
+    @Test
+    public void locksUsernameWithExponentialBackoff(){
+        for(int i=0;i<5;++i){
+            assertEquals(0L,throttle.retryAfter("alice","10.0.0.1"));
+            throttle.failed("alice","10.0.0.1");
+        }
+        assertEquals(30L,throttle.retryAfter("alice","10.0.0.2"));
+        assertEquals(0L,throttle.retryAfter("bob","10.0.0.2"));
+        now[0] += 31L;
+        for(int i=0;i<5;++i){
+            throttle.failed("alice","10.0.0.3");
+        }
+        assertEquals(60L,throttle.retryAfter("alice",null));
+        assertEquals(2L,throttle.getLockoutCount());
+        assertTrue(throttle.getThrottledCount() > 0L);
+    }
+
+    @Test
+    public void successClearsUsernameButNotAddress(){
+        for(int i=0;i<19;++i){
+            throttle.failed("user"+i,"10.0.0.9");
+            if(i%4==3){
+                throttle.succeeded("user"+i);
+            }
+        }
+        assertEquals(0L,throttle.retryAfter("carol","10.0.0.9"));
+        throttle.failed("carol","10.0.0.9");
+        assertEquals(30L,throttle.retryAfter("dave","10.0.0.9"));
+    }
+
+    @Test
+    public void slidingWindowForgetsOldFailures(){
+        for(int i=0;i<4;++i){
+            throttle.failed("erin",null);
+        }
+        now[0] += 120L;
+        throttle.failed("erin",null);
+        assertEquals(0L,throttle.retryAfter("erin",null));
+    }
+
+    @Test
+    public void usernamesDoNotShareBudgets(){
+        for(int i=0;i<10_000;++i){
+            for(int j=0;j<5;++j){
+                throttle.failed("victim"+i,null);
+            }
+        }
+        assertEquals(30L,throttle.retryAfter("victim42",null));
+        assertEquals(0L,throttle.retryAfter("frank",null));
+    }
+}
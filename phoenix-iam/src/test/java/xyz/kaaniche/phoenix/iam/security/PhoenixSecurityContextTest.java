@@ -0,0 +1,43 @@
+package xyz.kaaniche.phoenix.iam.security;
+
+import org.junit.jupiter.api.Test;
+import xyz.kaaniche.phoenix.iam.controllers.RoleCodec;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PhoenixSecurityContextTest {
+    private static PhoenixSecurityContext caller(String... roles){
+        return new PhoenixSecurityContext(() -> "alice",RoleCodec.encode(List.of(roles)),true,"Bearer");
+    }
+
+    @Test
+    public void checksRolesWithBitTests(){
+        PhoenixSecurityContext moderator = caller("Surfer","Moderator");
+        assertTrue(moderator.isUserInRole("Moderator"));
+        assertFalse(moderator.isUserInRole("Administrator"));
+        assertFalse(moderator.isUserInRole("root"));
+        assertFalse(moderator.isUserInRole("guest"));
+        assertFalse(moderator.isUserInRole("unknown"));
+        assertTrue(moderator.satisfies(RoleRequirement.anyOf("Administrator","Moderator")));
+        assertFalse(moderator.satisfies(RoleRequirement.anyOf("Administrator","root")));
+    }
+
+    @Test
+    public void rootAndGuestAreExclusive(){
+        PhoenixSecurityContext root = caller("root","Surfer");
+        assertEquals(Long.MAX_VALUE,root.getRoleMask());
+        assertTrue(root.isUserInRole("root"));
+        assertFalse(root.isUserInRole("Surfer"));
+        assertFalse(root.satisfies(RoleRequirement.anyOf("Surfer","Moderator","Administrator")));
+        assertTrue(root.satisfies(RoleRequirement.anyOf("Administrator","root")));
+
+        PhoenixSecurityContext guest = caller("guest");
+        assertTrue(guest.isUserInRole("guest"));
+        assertFalse(guest.satisfies(RoleRequirement.anyOf("Surfer")));
+        assertTrue(guest.satisfies(RoleRequirement.anyOf("Surfer","guest")));
+    }
+}
@@ -2,6 +2,10 @@ package xyz.kaaniche.phoenix.iam.security;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestPassword {
@@ -11,4 +15,27 @@ public class TestPassword {
         System.out.println(hash);
         assertTrue(Argon2Utility.check(hash,"fLGVAI2KKzj6C1aXRYwLDbztILRatmBVRXribg/QMynib8kOMK293LJoAKOrNmOI".toCharArray()));
     }
+
+    @Test
+    public void rehashOutdatedParameters(){
+        String hash = Argon2Utility.hash("secret".toCharArray());
+        assertEquals(Optional.of(Argon2Utility.getParameters()),Argon2Parameters.parse(hash));
+        assertFalse(Argon2Utility.needsRehash(hash));
+        assertTrue(Argon2Utility.needsRehash("$argon2id$v=19$m=65536,t=2,p=1$c29tZXNhbHQ$aGFzaA"));
+        assertFalse(Argon2Utility.needsRehash("{SHA}aGFzaA"));
+    }
+
+    @Test
+    public void keepHashesNotWeakerThanCurrentParameters(){
+        Argon2Parameters current = Argon2Utility.getParameters();
+        // stronger, or trading iterations for memory as another node's calibration may
+        assertFalse(Argon2Utility.needsRehash(encoded(current.iterations()+1,current.memory(),current.threads())));
+        assertFalse(Argon2Utility.needsRehash(encoded(current.iterations()+5,current.memory()/2,current.threads())));
+        assertFalse(Argon2Utility.needsRehash(encoded(current.iterations(),current.memory(),current.threads()+1)));
+        assertTrue(Argon2Utility.needsRehash(encoded(current.iterations(),current.memory()-1,current.threads())));
+    }
+
+    private static String encoded(int iterations,int memory,int threads){
+        return "$argon2id$v=19$m="+memory+",t="+iterations+",p="+threads+"$c29tZXNhbHQ$aGFzaA";
+    }
 }